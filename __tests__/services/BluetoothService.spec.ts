@@ -6,6 +6,7 @@ jest.mock("react-native", () => {
       startScanning: jest.fn(),
       connectToDevice: jest.fn(),
       sendMessage: jest.fn(),
+      sendMessageWithPriority: jest.fn(),
       startAdvertising: jest.fn(),
     },
   };
@@ -82,4 +83,28 @@ describe("BluetoothService", () => {
       expect.any(String)
     );
   });
+
+  it("should send critical broadcasts in the emergency class", async () => {
+    const deviceId = "test-device-id";
+    bluetoothService["discoveredDevices"].set(deviceId, {
+      id: deviceId,
+      name: "Test Device",
+      address: deviceId,
+      rssi: -50,
+      isConnected: true,
+      lastSeen: Date.now(),
+      capabilities: ["text"],
+      trustLevel: "trusted",
+    });
+
+    await bluetoothService.broadcast({ type: "EMERGENCY_BROADCAST", priority: "CRITICAL" });
+    expect(BluetoothMeshModule.sendMessageWithPriority).toHaveBeenCalledWith(
+      deviceId,
+      expect.any(String),
+      "emergency"
+    );
+
+    await bluetoothService.broadcast({ type: "EMERGENCY_BROADCAST", priority: "LOW" });
+    expect(BluetoothMeshModule.sendMessage).toHaveBeenCalledWith(deviceId, expect.any(String));
+  });
 });
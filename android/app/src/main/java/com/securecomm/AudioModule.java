@@ -6,6 +6,8 @@ import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.Callback;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
 
 import android.media.AudioFormat;
@@ -18,8 +20,10 @@ import android.util.Log;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
 
 public class AudioModule extends ReactContextBaseJavaModule {
 
@@ -33,18 +37,53 @@ public class AudioModule extends ReactContextBaseJavaModule {
             AUDIO_FORMAT
     );
 
+    private static final int CAPTURE_POOL_FRAMES = 4;
+    private static final long LEVEL_INTERVAL_NANOS = 66_000_000L;
+    private static final int VAD_HANGOVER_MILLIS = 300;
+    private static final int VAD_KEEPALIVE_MILLIS = 400;
+
     private static final int CHANNEL_CONFIG_OUT = AudioFormat.CHANNEL_OUT_MONO;
     private static final int BUFFER_SIZE_PLAYING = AudioTrack.getMinBufferSize(
             SAMPLE_RATE,
             CHANNEL_CONFIG_OUT,
             AUDIO_FORMAT
     );
+    private static final int JITTER_CAPACITY_FRAMES = 64;
+    private static final int JITTER_MIN_FRAMES = 2;
+    private static final int JITTER_MAX_FRAMES = 12;
 
-    private AudioRecord audioRecord = null;
+    private volatile AudioRecord audioRecord = null;
     private AudioTrack audioTrack = null;
-    private boolean isRecording = false;
-    private boolean isPlaying = false;
+    private volatile boolean isRecording = false;
+    private volatile boolean isPlaying = false;
     private ExecutorService executorService = Executors.newSingleThreadExecutor();
+    private PcmFramePool framePool;
+    private volatile String voiceCodecMode = VoiceCodec.MODE_PCM;
+    private volatile boolean vadEnabled = true;
+    private final VoiceActivityDetector vad = new VoiceActivityDetector(VAD_HANGOVER_MILLIS, VAD_KEEPALIVE_MILLIS);
+    private volatile PlaybackEngine playback;
+    private final LongAdder framesCaptured = new LongAdder();
+    private final LongAdder framesSent = new LongAdder();
+    private final LongAdder framesDropped = new LongAdder();
+    private final EventBatcher eventBatcher = new EventBatcher(new EventBatcher.Emitter() {
+        @Override
+        public void emit(String eventName, Object payload) {
+            sendEvent(eventName, payload);
+        }
+
+        @Override
+        public void emitBatch(String eventName, List<Object> payloads) {
+            sendEvent(eventName + BridgeEvents.BATCH_SUFFIX, BridgeEvents.toArray(payloads));
+        }
+    }, Executors.newSingleThreadScheduledExecutor());
+
+    private interface FrameSink {
+        /** Consumes the frame between position and limit; the buffer returns to the pool afterwards. */
+        void onFrame(ByteBuffer pcm);
+
+        /** Sends a {@link ComfortNoise} marker in place of suppressed frames. */
+        void onKeepalive(ByteBuffer marker);
+    }
 
     public AudioModule(ReactApplicationContext reactContext) {
         super(reactContext);
@@ -57,6 +96,20 @@ public class AudioModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void startRecording(Promise promise) {
+        startCapture(null, null, promise);
+    }
+
+    /** Captures straight into BluetoothMeshModule's send path; no onAudioData events are emitted. */
+    @ReactMethod
+    public void startStreamingToPeer(String deviceAddress, String keyHandle, Promise promise) {
+        if (getReactApplicationContext().getNativeModule(BluetoothMeshModule.class) == null) {
+            promise.reject("MESH_UNAVAILABLE", "BluetoothMeshModule is not registered");
+            return;
+        }
+        startCapture(deviceAddress, keyHandle, promise);
+    }
+
+    private void startCapture(String peerAddress, String keyHandle, Promise promise) {
         if (isRecording) {
             promise.resolve(true);
             return;
@@ -74,32 +127,23 @@ public class AudioModule extends ReactContextBaseJavaModule {
             if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
                 throw new IllegalStateException("AudioRecord not initialized");
             }
+            if (framePool == null) {
+                framePool = new PcmFramePool(CAPTURE_POOL_FRAMES, BUFFER_SIZE_RECORDING);
+            }
+            FrameSink sink = peerAddress != null ? meshSink(peerAddress, keyHandle) : jsSink();
+            VoiceCodec codec = VoiceCodec.forMode(voiceCodecMode);
+            if (codec != null) {
+                sink = encodingSink(new VoiceEncoder(codec, SAMPLE_RATE, BUFFER_SIZE_RECORDING), sink);
+            }
 
+            vad.reset();
             audioRecord.startRecording();
             isRecording = true;
             Log.d(TAG, "Recording started");
 
-            executorService.execute(() -> {
-                byte[] buffer = new byte[BUFFER_SIZE_RECORDING];
-                while (isRecording) {
-                    int bytesRead = audioRecord.read(buffer, 0, buffer.length);
-                    if (bytesRead > 0) {
-                        // Convert byte array to Base64 string for sending to JS
-                        String base64Data = Base64.encodeToString(buffer, 0, bytesRead, Base64.NO_WRAP);
-                        sendEvent("onAudioData", base64Data);
-                        
-                        // Calculate voice level (simple RMS for now)
-                        long sum = 0;
-                        for (int i = 0; i < bytesRead; i += 2) {
-                            short sample = (short) ((buffer[i + 1] << 8) | buffer[i]);
-                            sum += sample * sample;
-                        }
-                        double rms = Math.sqrt(sum / (bytesRead / 2));
-                        double volume = rms / 32768.0; // Max amplitude for 16-bit PCM
-                        sendEvent("onVoiceLevelChanged", volume);
-                    }
-                }
-            });
+            final AudioRecord record = audioRecord;
+            final FrameSink captureSink = sink;
+            executorService.execute(() -> captureLoop(record, captureSink));
             promise.resolve(true);
         } catch (Exception e) {
             Log.e(TAG, "Failed to start recording", e);
@@ -107,6 +151,132 @@ public class AudioModule extends ReactContextBaseJavaModule {
         }
     }
 
+    // Steady state allocates nothing here: frames come from the pool and the level is a primitive.
+    private void captureLoop(AudioRecord record, FrameSink sink) {
+        long nextLevelAt = 0;
+        byte[] marker = new byte[ComfortNoise.MARKER_BYTES];
+        ByteBuffer markerView = ByteBuffer.wrap(marker);
+        NativeMetrics metrics = NativeMetrics.GLOBAL;
+        // A quick stop/start makes isRecording true again for a newer record, so the loop also checks it is current.
+        while (isRecording && record == audioRecord) {
+            ByteBuffer frame = framePool.acquire();
+            try {
+                int bytesRead = record.read(frame, frame.capacity());
+                if (bytesRead < 0) {
+                    // The record failed or was released under us; it will not recover.
+                    metrics.increment(NativeMetrics.AUDIO_CAPTURE_ERRORS);
+                    break;
+                }
+                if (bytesRead == 0) {
+                    continue;
+                }
+                long now = System.nanoTime();
+                frame.limit(bytesRead);
+                framesCaptured.increment();
+                metrics.increment(NativeMetrics.AUDIO_FRAMES_CAPTURED);
+                double level = PcmLevel.rms(frame);
+                if (now >= nextLevelAt) {
+                    // The meter only needs a few updates a second, so the level is boxed at that rate.
+                    eventBatcher.post("onVoiceLevelChanged", "level", level);
+                    nextLevelAt = now + LEVEL_INTERVAL_NANOS;
+                }
+                int decision = vadEnabled
+                        ? vad.process(level, bytesRead / 2 * 1000 / SAMPLE_RATE)
+                        : VoiceActivityDetector.SEND;
+                if (decision == VoiceActivityDetector.SEND) {
+                    sink.onFrame(frame);
+                } else if (decision == VoiceActivityDetector.KEEPALIVE) {
+                    ComfortNoise.encode(vad.noiseFloor(), marker);
+                    markerView.clear();
+                    sink.onKeepalive(markerView);
+                }
+                // Taking longer than the buffer lasts means AudioRecord is overwriting unread audio.
+                if (System.nanoTime() - now > bytesRead / 2 * 1_000_000_000L / SAMPLE_RATE) {
+                    metrics.increment(NativeMetrics.AUDIO_CAPTURE_OVERRUNS);
+                }
+            } finally {
+                framePool.release(frame);
+            }
+        }
+    }
+
+    // The encoder hands each 20 ms frame on to the transport sink instead of the raw capture buffer.
+    private static FrameSink encodingSink(VoiceEncoder encoder, FrameSink transport) {
+        final VoiceEncoder.Output output = transport::onFrame;
+        return new FrameSink() {
+            @Override
+            public void onFrame(ByteBuffer pcm) {
+                encoder.encode(pcm, output);
+            }
+
+            @Override
+            public void onKeepalive(ByteBuffer marker) {
+                transport.onKeepalive(marker);
+            }
+        };
+    }
+
+    @ReactMethod
+    public void setVoiceCodec(String mode, Promise promise) {
+        try {
+            VoiceCodec.forMode(mode);
+        } catch (IllegalArgumentException e) {
+            promise.reject("INVALID_CODEC", "Codec must be pcm, adpcm8 or adpcm16");
+            return;
+        }
+        // Takes effect on the next startRecording / startPlaying.
+        voiceCodecMode = mode;
+        promise.resolve(mode);
+    }
+
+    /** While enabled (the default), silent buffers are not sent; a comfort-noise marker stands in for them. */
+    @ReactMethod
+    public void setVoiceActivityDetection(boolean enabled, Promise promise) {
+        vadEnabled = enabled;
+        promise.resolve(enabled);
+    }
+
+    private FrameSink jsSink() {
+        final byte[] scratch = new byte[framePool.frameBytes()];
+        return new FrameSink() {
+            @Override
+            public void onFrame(ByteBuffer frame) {
+                int length = frame.remaining();
+                frame.get(scratch, 0, length);
+                // Convert byte array to Base64 string for sending to JS
+                eventBatcher.post("onAudioData", Base64.encodeToString(scratch, 0, length, Base64.NO_WRAP));
+            }
+
+            @Override
+            public void onKeepalive(ByteBuffer marker) {
+                // Goes out as ordinary audio data; playAudioData on the far end recognises it.
+                onFrame(marker);
+            }
+        };
+    }
+
+    private FrameSink meshSink(String peerAddress, String keyHandle) {
+        final BluetoothMeshModule mesh = getReactApplicationContext().getNativeModule(BluetoothMeshModule.class);
+        return new FrameSink() {
+            private int sequence;
+
+            @Override
+            public void onFrame(ByteBuffer frame) {
+                if (mesh.sendAudioFrame(peerAddress, keyHandle, sequence++, frame)) {
+                    framesSent.increment();
+                } else {
+                    framesDropped.increment();
+                }
+            }
+
+            @Override
+            public void onKeepalive(ByteBuffer marker) {
+                // Markers skip the jitter buffer, so they do not take a sequence number.
+                mesh.sendAudioFrame(peerAddress, keyHandle, sequence, marker);
+            }
+        };
+    }
+
     @ReactMethod
     public void stopRecording(Promise promise) {
         if (!isRecording) {
@@ -150,7 +320,17 @@ public class AudioModule extends ReactContextBaseJavaModule {
                 throw new IllegalStateException("AudioTrack not initialized");
             }
 
+            VoiceDecoder decoder = VoiceCodec.MODE_PCM.equals(voiceCodecMode) ? null : new VoiceDecoder(SAMPLE_RATE);
+            // Codec frames are 20 ms. Raw PCM frames are whole capture buffers; the engine
+            // measures them as they arrive, starting from the length of our own.
+            int frameMillis = decoder != null ? VoiceCodec.FRAME_MILLIS : BUFFER_SIZE_RECORDING / 2 * 1000 / SAMPLE_RATE;
+            JitterBuffer jitterBuffer = new JitterBuffer(JITTER_CAPACITY_FRAMES, Math.max(1, frameMillis),
+                    JITTER_MIN_FRAMES, JITTER_MAX_FRAMES);
+            final AudioTrack track = audioTrack;
+            playback = new PlaybackEngine(jitterBuffer, decoder, SAMPLE_RATE,
+                    (samples, length) -> track.write(samples, 0, length));
             audioTrack.play();
+            playback.start();
             isPlaying = true;
             Log.d(TAG, "Playing started");
             promise.resolve(true);
@@ -160,16 +340,17 @@ public class AudioModule extends ReactContextBaseJavaModule {
         }
     }
 
+    /** Queues a chunk in arrival order; the playback thread writes it to the AudioTrack. */
     @ReactMethod
     public void playAudioData(String base64AudioData, Promise promise) {
-        if (!isPlaying || audioTrack == null) {
+        PlaybackEngine engine = playback;
+        if (!isPlaying || engine == null) {
             promise.reject("NOT_PLAYING", "AudioTrack is not active or initialized.");
             return;
         }
 
         try {
-            byte[] audioData = Base64.decode(base64AudioData, Base64.DEFAULT);
-            audioTrack.write(audioData, 0, audioData.length);
+            engine.offerInOrder(Base64.decode(base64AudioData, Base64.DEFAULT));
             promise.resolve(true);
         } catch (Exception e) {
             Log.e(TAG, "Failed to play audio data", e);
@@ -177,6 +358,38 @@ public class AudioModule extends ReactContextBaseJavaModule {
         }
     }
 
+    /** Like playAudioData, but reordered by the sender's 16-bit frame sequence number. */
+    @ReactMethod
+    public void playAudioFrame(int sequence, String base64AudioData, Promise promise) {
+        PlaybackEngine engine = playback;
+        if (!isPlaying || engine == null) {
+            promise.reject("NOT_PLAYING", "AudioTrack is not active or initialized.");
+            return;
+        }
+
+        try {
+            // False only means the frame was late or a duplicate, which the stats count.
+            promise.resolve(engine.offer(sequence, Base64.decode(base64AudioData, Base64.DEFAULT)));
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to play audio frame", e);
+            promise.reject("PLAY_AUDIO_DATA_FAILED", e.getMessage());
+        }
+    }
+
+    /**
+     * Hands a decrypted mesh audio frame straight to playback. Called from the
+     * mesh module's GATT threads; returns false when nothing is playing, so the
+     * caller can fall back to the JS event.
+     */
+    boolean acceptNetworkFrame(int sequence, byte[] frame) {
+        PlaybackEngine engine = playback;
+        if (!isPlaying || engine == null) {
+            return false;
+        }
+        engine.offer(sequence, frame);
+        return true;
+    }
+
     @ReactMethod
     public void stopPlaying(Promise promise) {
         if (!isPlaying) {
@@ -184,6 +397,11 @@ public class AudioModule extends ReactContextBaseJavaModule {
             return;
         }
         isPlaying = false;
+        if (playback != null) {
+            // The writer may be blocked in AudioTrack.write, so stop it before the track goes away.
+            playback.stop();
+            playback = null;
+        }
         if (audioTrack != null) {
             try {
                 audioTrack.stop();
@@ -199,6 +417,59 @@ public class AudioModule extends ReactContextBaseJavaModule {
         promise.resolve(true);
     }
 
+    @ReactMethod
+    public void setEventBatching(int windowMillis, int maxCount, Promise promise) {
+        eventBatcher.configure(windowMillis, maxCount);
+        promise.resolve(eventBatcher.isBatching());
+    }
+
+    @ReactMethod
+    public void getEventStats(Promise promise) {
+        promise.resolve(BridgeEvents.stats(eventBatcher));
+    }
+
+    @ReactMethod
+    public void getCaptureStats(Promise promise) {
+        WritableMap stats = Arguments.createMap();
+        stats.putDouble("framesCaptured", framesCaptured.sum());
+        stats.putDouble("framesSent", framesSent.sum());
+        stats.putDouble("framesDropped", framesDropped.sum());
+        stats.putDouble("poolExhausted", framePool != null ? framePool.exhausted() : 0);
+        stats.putBoolean("vadEnabled", vadEnabled);
+        stats.putBoolean("voiceActive", vad.isActive());
+        stats.putDouble("noiseFloor", vad.noiseFloor());
+        stats.putDouble("framesSuppressed", vad.suppressed());
+        stats.putDouble("suppressedFraction", vad.suppressedFraction());
+        stats.putDouble("keepalivesSent", vad.keepalives());
+        promise.resolve(stats);
+    }
+
+    @ReactMethod
+    public void getPlaybackStats(Promise promise) {
+        WritableMap stats = Arguments.createMap();
+        PlaybackEngine engine = playback;
+        stats.putBoolean("playing", isPlaying);
+        if (engine != null) {
+            JitterBuffer buffer = engine.buffer();
+            stats.putDouble("bufferedFrames", buffer.depth());
+            stats.putDouble("targetFrames", buffer.targetDepth());
+            stats.putDouble("jitterMillis", buffer.jitterMillis());
+            stats.putDouble("bufferLatencyMillis", buffer.latencyMillis());
+            stats.putDouble("outputLatencyMillis", BUFFER_SIZE_PLAYING / 2 * 1000.0 / SAMPLE_RATE);
+            stats.putDouble("framesReceived", buffer.received());
+            stats.putDouble("framesPlayed", engine.framesPlayed());
+            stats.putDouble("framesRejected", engine.framesRejected());
+            stats.putDouble("lateFrames", buffer.late());
+            stats.putDouble("duplicateFrames", buffer.duplicates());
+            stats.putDouble("lostFrames", buffer.lost());
+            stats.putDouble("underruns", buffer.underruns());
+            stats.putDouble("concealedFrames", buffer.concealed());
+            stats.putDouble("trimmedFrames", buffer.trimmed());
+            stats.putDouble("comfortNoiseFrames", engine.comfortNoiseFrames());
+        }
+        promise.resolve(stats);
+    }
+
     private void sendEvent(String eventName, Object data) {
         getReactApplicationContext()
                 .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
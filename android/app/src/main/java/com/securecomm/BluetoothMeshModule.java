@@ -16,9 +16,12 @@ import android.bluetooth.le.AdvertiseSettings;
 import android.bluetooth.le.BluetoothLeAdvertiser;
 import android.bluetooth.le.BluetoothLeScanner;
 import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
 import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
 import android.content.Context;
 import android.os.ParcelUuid;
+import android.util.Log;
 
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
@@ -28,10 +31,26 @@ import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.util.Base64;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
 import java.util.UUID;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.spec.SecretKeySpec;
 
 public class BluetoothMeshModule extends ReactContextBaseJavaModule {
     
@@ -40,24 +59,115 @@ public class BluetoothMeshModule extends ReactContextBaseJavaModule {
     private static final UUID RX_CHARACTERISTIC_UUID = UUID.fromString("6E400003-B5A3-F393-E0A9-E50E24DCCA9E");
     // Add a characteristic for exchanging public keys
     private static final UUID PUBLIC_KEY_CHARACTERISTIC_UUID = UUID.fromString("6E400004-B5A3-F393-E0A9-E50E24DCCA9E");
+    // Write-without-response twin of TX; its presence advertises fast-mode support
+    private static final UUID TX_FAST_CHARACTERISTIC_UUID = UUID.fromString("6E400005-B5A3-F393-E0A9-E50E24DCCA9E");
+
+    private static final long ROUTE_ADVERT_INTERVAL_MILLIS = 30_000;
+    // Three missed adverts before a route is forgotten.
+    private static final long ROUTE_MAX_AGE_MILLIS = 3 * ROUTE_ADVERT_INTERVAL_MILLIS + 5_000;
+    private static final long AUDIO_SEQUENCE_MASK = 0xffffL;
+    private static final int OUTBOX_BATCH = 8;
+    private static final long OUTBOX_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(7);
 
     private BluetoothAdapter bluetoothAdapter;
     private BluetoothLeScanner bluetoothLeScanner;
     private BluetoothLeAdvertiser bluetoothLeAdvertiser;
     private BluetoothGattServer gattServer;
-    private Map<String, BluetoothGatt> connectedDevices;
+    private final Map<String, PeerConnection> connections = new ConcurrentHashMap<>();
+    private final ConnectionPool connectionPool = new ConnectionPool(ConnectionPool.DEFAULT_MAX_LINKS);
+    private final Map<String, SerialExecutor> inboundExecutors = new ConcurrentHashMap<>();
+    private final ExecutorService callbackPool = newCallbackPool();
+    private final Map<String, String> sessionKeyHandles = new ConcurrentHashMap<>();
+    private final PacketReassembler reassembler =
+            new PacketReassembler(PacketReassembler.DEFAULT_TIMEOUT_MILLIS, PacketReassembler.DEFAULT_MAX_PARTIALS);
+    private final MeshNode meshNode = new MeshNode(ThreadLocalRandom.current().nextInt(1, Integer.MAX_VALUE),
+            new SeenMessageSet(SeenMessageSet.DEFAULT_BUCKETS, SeenMessageSet.DEFAULT_BUCKET_MILLIS,
+                    SeenMessageSet.DEFAULT_BUCKET_CAPACITY), 64, new MeshTransport() {
+                @Override
+                public Iterable<String> links() {
+                    return connections.keySet();
+                }
+
+                @Override
+                public boolean send(String link, byte[] packet, int trafficClass) {
+                    PeerConnection connection = connections.get(link);
+                    return connection != null && connection.isReady()
+                            && connection.writeQueue.enqueueMesh(packet, trafficClass, (success, error) -> { });
+                }
+            });
+    private final OutboundScheduler.Stats outboundStats = new OutboundScheduler.Stats();
     private String ownPublicKey;
+    private final RadioScheduler radioScheduler = new RadioScheduler(System.currentTimeMillis());
+    private final ScheduledExecutorService radioExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final List<ScanFilter> scanFilters = Collections.singletonList(
+            new ScanFilter.Builder().setServiceUuid(new ParcelUuid(SERVICE_UUID)).build());
+    private ScheduledFuture<?> radioTick;
+    private MessageOutbox outbox;
+    private boolean invalidated;
+    private ScheduledFuture<?> metricsDump;
+    private boolean scanRadioOn;
+    private final EventBatcher eventBatcher = new EventBatcher(new EventBatcher.Emitter() {
+        @Override
+        public void emit(String eventName, Object payload) {
+            sendEvent(eventName, payload);
+        }
+
+        @Override
+        public void emitBatch(String eventName, List<Object> payloads) {
+            sendEvent(eventName + BridgeEvents.BATCH_SUFFIX, BridgeEvents.toArray(payloads));
+        }
+    }, Executors.newSingleThreadScheduledExecutor());
 
     public BluetoothMeshModule(ReactApplicationContext reactContext) {
         super(reactContext);
         initializeBluetooth();
-        connectedDevices = new HashMap<>();
+        radioExecutor.scheduleWithFixedDelay(
+                () -> meshNode.advertRound(System.currentTimeMillis(), ROUTE_MAX_AGE_MILLIS), ROUTE_ADVERT_INTERVAL_MILLIS,
+                ROUTE_ADVERT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // GATT callbacks arrive on a binder thread; the work is handed to this pool through each
+    // peer's SerialExecutor so links are served in parallel but each one stays in order.
+    private static ExecutorService newCallbackPool() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+            Thread thread = new Thread(runnable, "gatt-callback-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private SerialExecutor inboundExecutor(String deviceAddress) {
+        return inboundExecutors.computeIfAbsent(deviceAddress, address -> new SerialExecutor(callbackPool));
     }
     
     @Override
     public String getName() {
         return "BluetoothMeshModule";
     }
+
+    /**
+     * Called when the React instance goes away. A reload builds a new module
+     * that maps the same outbox files, so this one must let go of them, and
+     * its scheduler threads would otherwise outlive it.
+     */
+    @Override
+    public void invalidate() {
+        synchronized (this) {
+            invalidated = true;
+            if (outbox != null) {
+                try {
+                    outbox.close();
+                } catch (IOException e) {
+                    Log.w("BluetoothMeshModule", "Failed to close outbox", e);
+                }
+                outbox = null;
+            }
+        }
+        radioExecutor.shutdownNow();
+        eventBatcher.shutdown();
+        super.invalidate();
+    }
     
     private void initializeBluetooth() {
         BluetoothManager bluetoothManager = 
@@ -69,6 +179,44 @@ public class BluetoothMeshModule extends ReactContextBaseJavaModule {
         }
     }
 
+    private final ScanCallback scanCallback = new ScanCallback() {
+        @Override
+        public void onScanResult(int callbackType, ScanResult result) {
+            radioScheduler.recordCallback(1);
+            reportScanResult(result);
+        }
+
+        @Override
+        public void onBatchScanResults(List<ScanResult> results) {
+            radioScheduler.recordCallback(results.size());
+            for (ScanResult result : results) {
+                reportScanResult(result);
+            }
+        }
+
+        @Override
+        public void onScanFailed(int errorCode) {
+            sendEvent("ScanFailed", Arguments.createMap());
+        }
+    };
+
+    private void reportScanResult(ScanResult result) {
+        BluetoothDevice device = result.getDevice();
+        String deviceId = device.getAddress();
+        String deviceName = device.getName();
+        int rssi = result.getRssi();
+        connectionPool.recordSighting(deviceId, rssi);
+        
+        WritableMap deviceMap = Arguments.createMap();
+        deviceMap.putString("id", deviceId);
+        deviceMap.putString("name", deviceName != null ? deviceName : "Unknown");
+        deviceMap.putString("address", deviceId);
+        deviceMap.putInt("rssi", rssi);
+        
+        // Repeated sightings of a device within one batch window collapse to the newest RSSI.
+        eventBatcher.post("DeviceDiscovered", deviceId, deviceMap);
+    }
+
     private final AdvertiseCallback advertisingCallback = new AdvertiseCallback() {
         @Override
         public void onStartSuccess(AdvertiseSettings settingsInEffect) {
@@ -87,7 +235,7 @@ public class BluetoothMeshModule extends ReactContextBaseJavaModule {
             if (newState == BluetoothGatt.STATE_CONNECTED) {
                 // Handle new connection
             } else if (newState == BluetoothGatt.STATE_DISCONNECTED) {
-                // Handle disconnection
+                inboundExecutors.remove(device.getAddress());
             }
         }
 
@@ -98,6 +246,21 @@ public class BluetoothMeshModule extends ReactContextBaseJavaModule {
                         ownPublicKey != null ? ownPublicKey.getBytes() : null);
             }
         }
+
+        @Override
+        public void onCharacteristicWriteRequest(BluetoothDevice device, int requestId, BluetoothGattCharacteristic characteristic,
+                                                 boolean preparedWrite, boolean responseNeeded, int offset, byte[] value) {
+            boolean isTx = TX_CHARACTERISTIC_UUID.equals(characteristic.getUuid())
+                    || TX_FAST_CHARACTERISTIC_UUID.equals(characteristic.getUuid());
+            if (responseNeeded) {
+                gattServer.sendResponse(device, requestId,
+                        isTx ? BluetoothGatt.GATT_SUCCESS : BluetoothGatt.GATT_FAILURE, offset, null);
+            }
+            if (isTx) {
+                final String deviceAddress = device.getAddress();
+                inboundExecutor(deviceAddress).execute(() -> handleIncoming(deviceAddress, value));
+            }
+        }
     };
 
     @ReactMethod
@@ -115,11 +278,25 @@ public class BluetoothMeshModule extends ReactContextBaseJavaModule {
         service.addCharacteristic(new BluetoothGattCharacteristic(TX_CHARACTERISTIC_UUID, BluetoothGattCharacteristic.PROPERTY_WRITE, BluetoothGattCharacteristic.PERMISSION_WRITE));
         service.addCharacteristic(new BluetoothGattCharacteristic(RX_CHARACTERISTIC_UUID, BluetoothGattCharacteristic.PROPERTY_NOTIFY, BluetoothGattCharacteristic.PERMISSION_READ));
         service.addCharacteristic(new BluetoothGattCharacteristic(PUBLIC_KEY_CHARACTERISTIC_UUID, BluetoothGattCharacteristic.PROPERTY_READ, BluetoothGattCharacteristic.PERMISSION_READ));
+        service.addCharacteristic(new BluetoothGattCharacteristic(TX_FAST_CHARACTERISTIC_UUID, BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE, BluetoothGattCharacteristic.PERMISSION_WRITE));
         gattServer.addService(service);
 
+        radioExecutor.execute(() -> {
+            radioScheduler.setAdvertising(true, System.currentTimeMillis());
+            applyAdvertising();
+        });
+        promise.resolve(true);
+    }
+
+    // Runs on radioExecutor. Advertising settings are fixed at start, so a profile change restarts it.
+    private void applyAdvertising() {
+        if (bluetoothLeAdvertiser == null || !radioScheduler.advertising()) {
+            return;
+        }
+        RadioScheduler.Profile profile = radioScheduler.profile();
         AdvertiseSettings settings = new AdvertiseSettings.Builder()
-                .setAdvertiseMode(AdvertiseSettings.ADVERTISE_MODE_LOW_LATENCY)
-                .setTxPowerLevel(AdvertiseSettings.ADVERTISE_TX_POWER_HIGH)
+                .setAdvertiseMode(advertiseMode(profile.advertiseLevel))
+                .setTxPowerLevel(advertiseTxPower(profile.advertiseLevel))
                 .setConnectable(true)
                 .build();
 
@@ -128,8 +305,8 @@ public class BluetoothMeshModule extends ReactContextBaseJavaModule {
                 .addServiceUuid(new ParcelUuid(SERVICE_UUID))
                 .build();
 
+        bluetoothLeAdvertiser.stopAdvertising(advertisingCallback);
         bluetoothLeAdvertiser.startAdvertising(settings, data, advertisingCallback);
-        promise.resolve(true);
     }
     
     @ReactMethod
@@ -139,125 +316,822 @@ public class BluetoothMeshModule extends ReactContextBaseJavaModule {
             return;
         }
         
-        ScanCallback scanCallback = new ScanCallback() {
-            @Override
-            public void onScanResult(int callbackType, ScanResult result) {
-                BluetoothDevice device = result.getDevice();
-                String deviceId = device.getAddress();
-                String deviceName = device.getName();
-                int rssi = result.getRssi();
-                
-                WritableMap deviceMap = Arguments.createMap();
-                deviceMap.putString("id", deviceId);
-                deviceMap.putString("name", deviceName != null ? deviceName : "Unknown");
-                deviceMap.putString("address", deviceId);
-                deviceMap.putInt("rssi", rssi);
-                
-                sendEvent("DeviceDiscovered", deviceMap);
-            }
-            
-            @Override
-            public void onScanFailed(int errorCode) {
-                sendEvent("ScanFailed", Arguments.createMap());
-            }
-        };
-        
-        bluetoothLeScanner.startScan(scanCallback);
+        radioExecutor.execute(() -> {
+            radioScheduler.setScanning(true, System.currentTimeMillis());
+            applyScan();
+            scheduleRadioTick();
+        });
         promise.resolve("Scanning started");
     }
+
+    @ReactMethod
+    public void stopScanning(Promise promise) {
+        radioExecutor.execute(() -> {
+            radioScheduler.setScanning(false, System.currentTimeMillis());
+            applyScan();
+            scheduleRadioTick();
+        });
+        promise.resolve("Scanning stopped");
+    }
+
+    // Runs on radioExecutor. Restarts the scan so the current profile's settings take effect.
+    private void applyScan() {
+        if (bluetoothLeScanner == null) {
+            return;
+        }
+        if (scanRadioOn) {
+            bluetoothLeScanner.stopScan(scanCallback);
+            scanRadioOn = false;
+        }
+        if (!radioScheduler.scanOn()) {
+            return;
+        }
+        RadioScheduler.Profile profile = radioScheduler.profile();
+        ScanSettings.Builder settings = new ScanSettings.Builder()
+                .setScanMode(scanMode(profile.scanLevel));
+        if (profile.reportDelayMillis > 0 && bluetoothAdapter.isOffloadedScanBatchingSupported()) {
+            settings.setReportDelay(profile.reportDelayMillis);
+        }
+        bluetoothLeScanner.startScan(scanFilters, settings.build(), scanCallback);
+        scanRadioOn = true;
+    }
+
+    private void runRadioTick() {
+        int changes = radioScheduler.tick(System.currentTimeMillis());
+        if ((changes & RadioScheduler.PROFILE_CHANGED) != 0) {
+            applyScan();
+            applyAdvertising();
+            WritableMap map = Arguments.createMap();
+            map.putString("profile", radioScheduler.profile().name);
+            sendEvent("RadioProfileChanged", map);
+        } else if ((changes & RadioScheduler.SCAN_TOGGLED) != 0) {
+            applyScan();
+        }
+        scheduleRadioTick();
+    }
+
+    private void scheduleRadioTick() {
+        if (radioTick != null) {
+            radioTick.cancel(false);
+            radioTick = null;
+        }
+        long delay = radioScheduler.delayUntilNextTick(System.currentTimeMillis());
+        if (delay >= 0) {
+            radioTick = radioExecutor.schedule(this::runRadioTick, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void noteTraffic(String deviceAddress) {
+        connectionPool.recordTraffic(deviceAddress, System.currentTimeMillis());
+        if (radioScheduler.recordTraffic(System.currentTimeMillis())) {
+            radioExecutor.execute(this::runRadioTick);
+        }
+    }
+
+    private static int scanMode(int level) {
+        switch (level) {
+            case RadioScheduler.LEVEL_HIGH:
+                return ScanSettings.SCAN_MODE_LOW_LATENCY;
+            case RadioScheduler.LEVEL_MEDIUM:
+                return ScanSettings.SCAN_MODE_BALANCED;
+            default:
+                return ScanSettings.SCAN_MODE_LOW_POWER;
+        }
+    }
+
+    private static int advertiseMode(int level) {
+        switch (level) {
+            case RadioScheduler.LEVEL_HIGH:
+                return AdvertiseSettings.ADVERTISE_MODE_LOW_LATENCY;
+            case RadioScheduler.LEVEL_MEDIUM:
+                return AdvertiseSettings.ADVERTISE_MODE_BALANCED;
+            default:
+                return AdvertiseSettings.ADVERTISE_MODE_LOW_POWER;
+        }
+    }
+
+    private static int advertiseTxPower(int level) {
+        switch (level) {
+            case RadioScheduler.LEVEL_HIGH:
+                return AdvertiseSettings.ADVERTISE_TX_POWER_HIGH;
+            case RadioScheduler.LEVEL_MEDIUM:
+                return AdvertiseSettings.ADVERTISE_TX_POWER_MEDIUM;
+            default:
+                return AdvertiseSettings.ADVERTISE_TX_POWER_LOW;
+        }
+    }
+
+    @ReactMethod
+    public void setRadioProfile(String mode, Promise promise) {
+        if (!radioScheduler.setMode(mode)) {
+            promise.reject("INVALID_PROFILE", "Profile must be auto, emergency, active or idle");
+            return;
+        }
+        radioExecutor.execute(this::runRadioTick);
+        promise.resolve(mode);
+    }
+
+    @ReactMethod
+    public void getRadioStats(Promise promise) {
+        long now = System.currentTimeMillis();
+        WritableMap stats = Arguments.createMap();
+        stats.putString("mode", radioScheduler.mode());
+        stats.putString("profile", radioScheduler.profile().name);
+        stats.putBoolean("scanning", radioScheduler.scanOn());
+        stats.putDouble("scanCallbacks", radioScheduler.callbacks());
+        stats.putDouble("scanResults", radioScheduler.results());
+        stats.putDouble("callbacksPerSecond", radioScheduler.callbacksPerSecond(now));
+        stats.putDouble("scanOnMillis", radioScheduler.scanOnMillis(now));
+        stats.putDouble("advertiseOnMillis", radioScheduler.advertiseOnMillis(now));
+        stats.putDouble("profileSwitches", radioScheduler.profileSwitches());
+        promise.resolve(stats);
+    }
     
     @ReactMethod
     public void connectToDevice(String deviceAddress, Promise promise) {
+        ConnectionPool.Admission admission = connectionPool.admit(deviceAddress, System.currentTimeMillis());
+        if (admission.action == ConnectionPool.REUSE) {
+            PeerConnection existing = connections.get(deviceAddress);
+            if (existing != null) {
+                promise.resolve(existing.isConnected() ? "Already connected" : "Connection in progress");
+                return;
+            }
+        } else if (admission.action == ConnectionPool.FULL) {
+            promise.reject("CONNECTION_LIMIT", "All " + connectionPool.maxLinks() + " links are held by higher-priority peers");
+            return;
+        }
+        if (admission.evict != null) {
+            closeConnection(admission.evict, "Evicted for a higher-priority peer");
+        }
+        if (!openConnection(deviceAddress)) {
+            connectionPool.release(deviceAddress);
+            promise.reject("CONNECT_FAILED", "Could not open a GATT connection");
+            return;
+        }
+        promise.resolve("Connection initiated");
+    }
+
+    @ReactMethod
+    public void disconnectFromDevice(String deviceAddress, Promise promise) {
+        closeConnection(deviceAddress, "Disconnected by request");
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void getPoolStats(Promise promise) {
+        WritableMap stats = Arguments.createMap();
+        stats.putInt("linked", connectionPool.linked());
+        stats.putInt("maxLinks", connectionPool.maxLinks());
+        stats.putDouble("reuses", connectionPool.reuses());
+        stats.putDouble("evictions", connectionPool.evictions());
+        stats.putDouble("rejected", connectionPool.rejected());
+        stats.putDouble("reconnects", connectionPool.reconnects());
+        stats.putDouble("abandoned", connectionPool.abandoned());
+        promise.resolve(stats);
+    }
+
+    // Tears a link down locally; closing the handle means no further callbacks arrive for it.
+    private void closeConnection(String deviceAddress, String reason) {
+        connectionPool.release(deviceAddress);
+        PeerConnection connection = connections.remove(deviceAddress);
+        if (connection == null) {
+            return;
+        }
+        connection.executor.execute(() -> {
+            BluetoothGatt gatt = connection.gatt();
+            connection.onDisconnected(reason);
+            if (gatt != null) {
+                gatt.disconnect();
+                gatt.close();
+            }
+            reassembler.clear(deviceAddress);
+            meshNode.linkDown(deviceAddress, System.currentTimeMillis());
+            WritableMap map = Arguments.createMap();
+            map.putString("deviceId", deviceAddress);
+            map.putString("status", "disconnected");
+            sendEvent("ConnectionStateChanged", map);
+        });
+    }
+
+    private void scheduleReconnect(String deviceAddress, long delayMillis) {
+        if (delayMillis < 0) {
+            return;
+        }
+        radioExecutor.schedule(() -> {
+            if (connectionPool.admitReconnect(deviceAddress) && !openConnection(deviceAddress)) {
+                scheduleReconnect(deviceAddress, connectionPool.onDisconnected(deviceAddress));
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // The caller must already hold a pool reservation for the address.
+    private boolean openConnection(String deviceAddress) {
         BluetoothDevice device = bluetoothAdapter.getRemoteDevice(deviceAddress);
-        device.connectGatt(getReactApplicationContext(), false, new BluetoothGattCallback() {
+        final PeerConnection connection = new PeerConnection(deviceAddress, callbackPool, outboundStats);
+        PeerConnection previous = connections.put(deviceAddress, connection);
+        if (previous != null) {
+            previous.onDisconnected("Replaced by a new connection");
+        }
+        BluetoothGatt gatt = device.connectGatt(getReactApplicationContext(), false, new BluetoothGattCallback() {
             @Override
             public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
-                 if (newState == BluetoothGatt.STATE_CONNECTED) {
-                    connectedDevices.put(deviceAddress, gatt);
+                connection.executor.execute(() -> handleConnectionStateChange(connection, gatt, newState));
+            }
+
+            @Override
+            public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
+                connection.executor.execute(() -> {
+                    if (status == BluetoothGatt.GATT_SUCCESS) {
+                        connection.writeQueue.setMtu(mtu);
+                    }
                     gatt.discoverServices();
-                    WritableMap map = Arguments.createMap();
-                    map.putString("deviceId", deviceAddress);
-                    map.putString("status", "connected");
-                    sendEvent("ConnectionStateChanged", map);
-                } else if (newState == BluetoothGatt.STATE_DISCONNECTED) {
-                    connectedDevices.remove(deviceAddress);
-                    WritableMap map = Arguments.createMap();
-                    map.putString("deviceId", deviceAddress);
-                    map.putString("status", "disconnected");
-                    sendEvent("ConnectionStateChanged", map);
+                });
+            }
+
+            @Override
+            public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                if (TX_CHARACTERISTIC_UUID.equals(characteristic.getUuid())
+                        || TX_FAST_CHARACTERISTIC_UUID.equals(characteristic.getUuid())) {
+                    boolean success = status == BluetoothGatt.GATT_SUCCESS;
+                    connection.executor.execute(() -> connection.writeQueue.onWriteComplete(success));
                 }
             }
 
             @Override
             public void onServicesDiscovered(BluetoothGatt gatt, int status) {
-                if (status == BluetoothGatt.GATT_SUCCESS) {
-                    BluetoothGattService service = gatt.getService(SERVICE_UUID);
-                    if (service != null) {
-                        BluetoothGattCharacteristic pkCharacteristic = service.getCharacteristic(PUBLIC_KEY_CHARACTERISTIC_UUID);
-                        if(pkCharacteristic != null) {
-                           gatt.readCharacteristic(pkCharacteristic);
-                        }
-                    }
-                }
+                connection.executor.execute(() -> handleServicesDiscovered(connection, gatt, status));
             }
 
             @Override
             public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
                  if (PUBLIC_KEY_CHARACTERISTIC_UUID.equals(characteristic.getUuid())) {
+                    // The stack reuses the characteristic value, so read it before leaving the binder thread.
                     String publicKey = new String(characteristic.getValue());
-                    WritableMap map = Arguments.createMap();
-                    map.putString("deviceId", gatt.getDevice().getAddress());
-                    map.putString("publicKey", publicKey);
-                    sendEvent("PublicKeyReceived", map);
+                    connection.executor.execute(() -> {
+                        WritableMap map = Arguments.createMap();
+                        map.putString("deviceId", deviceAddress);
+                        map.putString("publicKey", publicKey);
+                        sendEvent("PublicKeyReceived", map);
+                    });
                 }
             }
 
              @Override
             public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
-                byte[] data = characteristic.getValue();
-                String deviceId = gatt.getDevice().getAddress();
-                
-                WritableMap messageMap = Arguments.createMap();
-                messageMap.putString("deviceId", deviceId);
-                messageMap.putString("data", Base64.getEncoder().encodeToString(data));
-                
-                sendEvent("MessageReceived", messageMap);
+                byte[] value = characteristic.getValue().clone();
+                connection.executor.execute(() -> handleIncoming(deviceAddress, value));
             }
         });
-        promise.resolve("Connection initiated");
+        if (gatt == null) {
+            connections.remove(deviceAddress, connection);
+            return false;
+        }
+        connection.attach(gatt);
+        return true;
+    }
+
+    private void handleConnectionStateChange(PeerConnection connection, BluetoothGatt gatt, int newState) {
+        String deviceAddress = connection.address;
+        if (newState == BluetoothGatt.STATE_CONNECTED) {
+            connection.onConnected(gatt);
+            connectionPool.onConnected(deviceAddress);
+            // Negotiate the MTU first; service discovery follows in onMtuChanged.
+            if (!gatt.requestMtu(PacketFragmenter.REQUESTED_MTU)) {
+                gatt.discoverServices();
+            }
+            WritableMap map = Arguments.createMap();
+            map.putString("deviceId", deviceAddress);
+            map.putString("status", "connected");
+            sendEvent("ConnectionStateChanged", map);
+        } else if (newState == BluetoothGatt.STATE_DISCONNECTED) {
+            // Every client handle counts against the platform limit until it is closed.
+            gatt.close();
+            if (!connections.remove(deviceAddress, connection)) {
+                return;
+            }
+            connection.onDisconnected("Device disconnected");
+            reassembler.clear(deviceAddress);
+            meshNode.linkDown(deviceAddress, System.currentTimeMillis());
+            long reconnectDelay = connectionPool.onDisconnected(deviceAddress);
+            scheduleReconnect(deviceAddress, reconnectDelay);
+            WritableMap map = Arguments.createMap();
+            map.putString("deviceId", deviceAddress);
+            map.putString("status", "disconnected");
+            if (reconnectDelay >= 0) {
+                map.putDouble("reconnectInMillis", reconnectDelay);
+            }
+            sendEvent("ConnectionStateChanged", map);
+        }
+    }
+
+    // Resolves the characteristics once so sends never walk the service table.
+    private void handleServicesDiscovered(PeerConnection connection, BluetoothGatt gatt, int status) {
+        if (status != BluetoothGatt.GATT_SUCCESS) {
+            return;
+        }
+        BluetoothGattService service = gatt.getService(SERVICE_UUID);
+        if (service == null) {
+            return;
+        }
+        connection.onServicesResolved(service.getCharacteristic(TX_CHARACTERISTIC_UUID),
+                service.getCharacteristic(TX_FAST_CHARACTERISTIC_UUID));
+        BluetoothGattCharacteristic pkCharacteristic = service.getCharacteristic(PUBLIC_KEY_CHARACTERISTIC_UUID);
+        if (pkCharacteristic != null) {
+            gatt.readCharacteristic(pkCharacteristic);
+        }
+        // Introduce ourselves at once rather than waiting for the next advert round.
+        if (connection.hasTxCharacteristic()) {
+            meshNode.linkUp(connection.address, System.currentTimeMillis());
+            flushOutbox(connection);
+        }
     }
     
     @ReactMethod
     public void sendMessage(String deviceAddress, String message, Promise promise) {
-        BluetoothGatt gatt = connectedDevices.get(deviceAddress);
-        if (gatt == null) {
-            promise.reject("DEVICE_NOT_CONNECTED", "Device is not connected");
+        writePayload(deviceAddress, Base64.getDecoder().decode(message), OutboundScheduler.CHAT, promise);
+    }
+
+    /** Like sendMessage, in one of the scheduler classes: emergency, control, voice, chat or bulk. */
+    @ReactMethod
+    public void sendMessageWithPriority(String deviceAddress, String message, String priority, Promise promise) {
+        int trafficClass = OutboundScheduler.classForName(priority);
+        if (trafficClass < 0) {
+            promise.reject("INVALID_PRIORITY", "Priority must be emergency, control, voice, chat or bulk");
+            return;
+        }
+        writePayload(deviceAddress, Base64.getDecoder().decode(message), trafficClass, promise);
+    }
+
+    @ReactMethod
+    public void bindSessionKey(String deviceAddress, String keyHandle, Promise promise) {
+        if (keyHandle == null) {
+            sessionKeyHandles.remove(deviceAddress);
+        } else {
+            sessionKeyHandles.put(deviceAddress, keyHandle);
+        }
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void sendEncryptedMessage(String deviceAddress, String message, String keyHandle, Promise promise) {
+        SecretKeySpec secretKey = resolveSessionKey(keyHandle);
+        if (secretKey == null) {
+            promise.reject("UNKNOWN_KEY_HANDLE", "Session key is not registered");
+            return;
+        }
+        byte[] frame;
+        try {
+            frame = CryptoFrameCodec.encrypt(secretKey, message.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            promise.reject("ENCRYPT_FAILED", e.getMessage());
+            return;
+        }
+        writePayload(deviceAddress, frame, OutboundScheduler.CHAT, promise);
+    }
+
+    private void writePayload(String deviceAddress, byte[] payload, int trafficClass, final Promise promise) {
+        PeerConnection connection = connections.get(deviceAddress);
+        if (connection == null || !connection.isConnected()) {
+            storeForLater(deviceAddress, payload, trafficClass, promise);
             return;
         }
         
-        BluetoothGattService service = gatt.getService(SERVICE_UUID);
-        if (service == null) {
+        if (!connection.isReady()) {
             promise.reject("SERVICE_NOT_FOUND", "SecureComm service not found");
             return;
         }
         
-        BluetoothGattCharacteristic txCharacteristic = service.getCharacteristic(TX_CHARACTERISTIC_UUID);
-        if (txCharacteristic == null) {
+        if (!connection.hasTxCharacteristic()) {
             promise.reject("CHARACTERISTIC_NOT_FOUND", "TX characteristic not found");
             return;
         }
         
-        txCharacteristic.setValue(Base64.getDecoder().decode(message));
-        boolean success = gatt.writeCharacteristic(txCharacteristic);
+        boolean accepted = connection.writeQueue.enqueue(payload, trafficClass, (success, error) -> {
+            if (success) {
+                NativeMetrics.GLOBAL.increment(NativeMetrics.BLE_MESSAGES_SENT);
+                promise.resolve("Message sent");
+            } else {
+                NativeMetrics.GLOBAL.increment(NativeMetrics.BLE_MESSAGES_FAILED);
+                promise.reject("SEND_FAILED", error);
+            }
+        });
+        if (!accepted) {
+            NativeMetrics.GLOBAL.increment(NativeMetrics.BLE_MESSAGES_FAILED);
+            promise.reject("QUEUE_FULL", "Too many messages pending for this device");
+            return;
+        }
+        noteTraffic(deviceAddress);
+    }
+
+    // Keeps a message for a peer that is out of range; it goes out when the link is next ready.
+    private void storeForLater(String deviceAddress, byte[] payload, int trafficClass, Promise promise) {
+        try {
+            if (outbox().append(deviceAddress, trafficClass, payload, System.currentTimeMillis()) < 0) {
+                promise.reject("OUTBOX_FULL", "Device is not connected and the outbox is full");
+                return;
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            promise.reject("DEVICE_NOT_CONNECTED", "Device is not connected: " + e.getMessage());
+            return;
+        }
+        promise.resolve("Message queued");
+        // The link may have come up between the connection check and the append.
+        PeerConnection connection = connections.get(deviceAddress);
+        if (connection != null && connection.isReady()) {
+            connection.executor.execute(() -> flushOutbox(connection));
+        }
+    }
+
+    // Opened on first use rather than in the constructor, which runs during app startup.
+    private synchronized MessageOutbox outbox() throws IOException {
+        if (invalidated) {
+            throw new IOException("Module is shut down");
+        }
+        if (outbox == null) {
+            outbox = new MessageOutbox(new File(getReactApplicationContext().getFilesDir(), "outbox"),
+                    MessageOutbox.DEFAULT_SEGMENT_BYTES, MessageOutbox.DEFAULT_MAX_SEGMENTS);
+        }
+        return outbox;
+    }
+
+    /**
+     * Sends the peer's stored messages a batch at a time. A batch is leased,
+     * so a second flush cannot resend it, and the next batch follows once the
+     * last write of this one completes.
+     */
+    private void flushOutbox(PeerConnection connection) {
+        final MessageOutbox box;
+        List<MessageOutbox.Entry> batch;
+        try {
+            box = outbox();
+            box.expire(System.currentTimeMillis(), OUTBOX_MAX_AGE_MILLIS);
+            batch = box.lease(connection.address, OUTBOX_BATCH);
+        } catch (IOException e) {
+            return;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        AtomicInteger remaining = new AtomicInteger(batch.size());
+        AtomicInteger delivered = new AtomicInteger();
+        for (MessageOutbox.Entry entry : batch) {
+            GattWriteQueue.Completion completion = (success, error) -> {
+                if (success) {
+                    try {
+                        box.acknowledge(entry.id);
+                    } catch (IOException e) {
+                        // The record is marked delivered; only reclaiming its segment failed.
+                    }
+                    delivered.incrementAndGet();
+                } else {
+                    box.release(entry.id);
+                }
+                if (remaining.decrementAndGet() == 0 && delivered.get() > 0 && connection.isReady()) {
+                    connection.executor.execute(() -> flushOutbox(connection));
+                }
+            };
+            if (!connection.writeQueue.enqueue(entry.payload, entry.trafficClass, completion)) {
+                completion.onComplete(false, "Queue full");
+            }
+        }
+        noteTraffic(connection.address);
+    }
+
+    private void handleIncoming(String deviceId, byte[] fragment) {
+        NativeMetrics metrics = NativeMetrics.GLOBAL;
+        metrics.increment(NativeMetrics.BLE_FRAGMENTS_RECEIVED);
+        metrics.add(NativeMetrics.BLE_BYTES_RECEIVED, fragment.length);
+        long now = System.currentTimeMillis();
+        // The fragment header, not the payload, says whether this is mesh traffic.
+        boolean mesh = PacketFragmenter.kind(fragment) == PacketFragmenter.KIND_MESH;
+        byte[] data = reassembler.accept(deviceId, fragment, now);
+        if (data == null) {
+            return;
+        }
+        metrics.increment(NativeMetrics.BLE_PACKETS_RECEIVED);
+        noteTraffic(deviceId);
         
-        if (success) {
-            promise.resolve("Message sent");
+        if (!mesh) {
+            WritableMap messageMap = Arguments.createMap();
+            messageMap.putString("deviceId", deviceId);
+            putPayload(messageMap, deviceId, data);
+            eventBatcher.post("MessageReceived", messageMap);
+            return;
+        }
+        int decision = meshNode.receive(deviceId, data, now);
+        if ((decision & MeshRelay.DELIVER) != 0 && (MeshPacket.flags(data) & MeshPacket.FLAG_AUDIO) != 0) {
+            byte[] payload = MeshPacket.payload(data);
+            byte[] pcm = openFrame(deviceId, payload);
+            int sequence = (int) (MeshPacket.messageId(data) & AUDIO_SEQUENCE_MASK);
+            AudioModule audio = getReactApplicationContext().getNativeModule(AudioModule.class);
+            if (pcm != null && audio != null && audio.acceptNetworkFrame(sequence, pcm)) {
+                return;
+            }
+            WritableMap frameMap = Arguments.createMap();
+            frameMap.putString("deviceId", deviceId);
+            frameMap.putInt("source", MeshPacket.source(data));
+            frameMap.putInt("sequence", sequence);
+            frameMap.putString("data", Base64.getEncoder().encodeToString(pcm != null ? pcm : payload));
+            eventBatcher.post("AudioFrameReceived", frameMap);
+            return;
+        }
+        if ((decision & MeshRelay.DELIVER) != 0) {
+            WritableMap packetMap = Arguments.createMap();
+            packetMap.putString("deviceId", deviceId);
+            packetMap.putInt("source", MeshPacket.source(data));
+            packetMap.putString("messageId", Long.toHexString(MeshPacket.messageId(data)));
+            packetMap.putInt("hops", MeshPacket.hops(data) + 1);
+            putPayload(packetMap, deviceId, MeshPacket.payload(data));
+            eventBatcher.post("MeshPacketReceived", packetMap);
+        }
+    }
+
+    private void putPayload(WritableMap map, String deviceId, byte[] payload) {
+        String plaintext = decryptFrame(deviceId, payload);
+        if (plaintext != null) {
+            map.putString("message", plaintext);
         } else {
-            promise.reject("SEND_FAILED", "Failed to send message");
+            map.putString("data", Base64.getEncoder().encodeToString(payload));
+        }
+    }
+
+    /**
+     * Sends one captured audio frame to a directly connected peer with no JS
+     * hop. Runs on AudioModule's capture thread; {@code pcm} is only borrowed
+     * for the call, and the packet array is the one allocation per frame. The
+     * frame sequence number rides in the low 16 bits of the message id.
+     */
+    boolean sendAudioFrame(String deviceAddress, String keyHandle, int sequence, ByteBuffer pcm) {
+        PeerConnection connection = connections.get(deviceAddress);
+        if (connection == null || !connection.isReady()) {
+            return false;
+        }
+        SecretKeySpec secretKey = null;
+        if (keyHandle != null) {
+            secretKey = resolveSessionKey(keyHandle);
+            if (secretKey == null) {
+                return false;
+            }
+        }
+        int neighbor = meshNode.neighborOn(deviceAddress);
+        long messageId = (ThreadLocalRandom.current().nextLong() & ~AUDIO_SEQUENCE_MASK) | (sequence & AUDIO_SEQUENCE_MASK);
+        int length = secretKey != null ? CryptoFrameCodec.frameLength(pcm.remaining()) : pcm.remaining();
+        int flags = MeshPacket.withTrafficClass(MeshPacket.FLAG_AUDIO, OutboundScheduler.VOICE);
+        byte[] packet = MeshPacket.allocate(flags, 1, messageId, meshNode.localNodeId(),
+                neighbor != RoutingTable.NO_ROUTE ? neighbor : MeshPacket.BROADCAST, length);
+        ByteBuffer out = ByteBuffer.wrap(packet, MeshPacket.HEADER_BYTES, length);
+        try {
+            if (secretKey != null) {
+                CryptoFrameCodec.encrypt(secretKey, pcm, out);
+            } else {
+                out.put(pcm);
+            }
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+        meshNode.markOriginated(messageId, System.currentTimeMillis());
+        noteTraffic(deviceAddress);
+        return connection.writeQueue.enqueueMesh(packet, OutboundScheduler.VOICE, (success, error) -> { });
+    }
+
+    @ReactMethod
+    public void setNodeId(int nodeId, Promise promise) {
+        meshNode.setLocalNodeId(nodeId);
+        promise.resolve(nodeId);
+    }
+
+    @ReactMethod
+    public void getNodeId(Promise promise) {
+        promise.resolve(meshNode.localNodeId());
+    }
+
+    @ReactMethod
+    public void sendMeshPacket(int destination, String payload, int ttl, Promise promise) {
+        sendMeshPacketWithPriority(destination, payload, ttl, OutboundScheduler.CLASS_NAMES[OutboundScheduler.CHAT], promise);
+    }
+
+    /** The class travels in the header, so every relay on the path schedules the packet the same way. */
+    @ReactMethod
+    public void sendMeshPacketWithPriority(int destination, String payload, int ttl, String priority, Promise promise) {
+        int trafficClass = OutboundScheduler.classForName(priority);
+        if (trafficClass < 0) {
+            promise.reject("INVALID_PRIORITY", "Priority must be emergency, control, voice, chat or bulk");
+            return;
+        }
+        long messageId = ThreadLocalRandom.current().nextLong();
+        byte[] packet = MeshPacket.create(MeshPacket.withTrafficClass(0, trafficClass),
+                ttl > 0 ? ttl : MeshPacket.DEFAULT_TTL, messageId,
+                meshNode.localNodeId(), destination, Base64.getDecoder().decode(payload));
+        if (meshNode.send(packet, System.currentTimeMillis()) == 0) {
+            promise.reject("NO_PEERS_CONNECTED", "No connected peers to send to");
+            return;
+        }
+        promise.resolve(Long.toHexString(messageId));
+    }
+
+    @ReactMethod
+    public void getRoute(int destination, Promise promise) {
+        RoutingTable routingTable = meshNode.routingTable();
+        int nextHop = routingTable.nextHop(destination);
+        WritableMap route = Arguments.createMap();
+        route.putInt("destination", destination);
+        route.putInt("nextHop", nextHop);
+        route.putInt("cost", routingTable.cost(destination));
+        route.putString("deviceId", meshNode.nextHopLink(destination));
+        promise.resolve(route);
+    }
+
+    @ReactMethod
+    public void getRoutingStats(Promise promise) {
+        WritableMap stats = Arguments.createMap();
+        stats.putInt("routes", meshNode.routingTable().size());
+        stats.putInt("reachable", meshNode.routingTable().reachable());
+        stats.putInt("neighbors", meshNode.neighbors());
+        stats.putDouble("advertsSent", meshNode.advertsSent());
+        stats.putDouble("advertsReceived", meshNode.advertsReceived());
+        stats.putDouble("unicastForwards", meshNode.unicastForwards());
+        stats.putDouble("floodFallbacks", meshNode.floodFallbacks());
+        promise.resolve(stats);
+    }
+
+    @ReactMethod
+    public void getSchedulerStats(Promise promise) {
+        WritableMap stats = Arguments.createMap();
+        for (int c = 0; c < OutboundScheduler.CLASS_COUNT; c++) {
+            int queued = 0;
+            for (PeerConnection connection : connections.values()) {
+                queued += connection.writeQueue.depth(c);
+            }
+            LatencyHistogram latency = outboundStats.queueLatency[c];
+            WritableMap classStats = Arguments.createMap();
+            classStats.putInt("queued", queued);
+            classStats.putDouble("sent", outboundStats.sent[c].sum());
+            classStats.putDouble("dropped", outboundStats.dropped[c].sum());
+            classStats.putDouble("rejected", outboundStats.rejected[c].sum());
+            classStats.putDouble("preempted", outboundStats.preempted[c].sum());
+            classStats.putDouble("latencyCount", latency.count());
+            classStats.putDouble("latencyMeanMillis", latency.meanMillis());
+            classStats.putDouble("latencyP50Millis", latency.percentileMillis(0.5));
+            classStats.putDouble("latencyP99Millis", latency.percentileMillis(0.99));
+            classStats.putDouble("latencyMaxMillis", latency.maxMillis());
+            stats.putMap(OutboundScheduler.CLASS_NAMES[c], classStats);
+        }
+        promise.resolve(stats);
+    }
+
+    @ReactMethod
+    public void getOutboxStats(Promise promise) {
+        WritableMap stats = Arguments.createMap();
+        try {
+            MessageOutbox box = outbox();
+            stats.putInt("pending", box.pending());
+            stats.putDouble("pendingBytes", box.pendingBytes());
+            stats.putInt("peers", box.peers());
+            stats.putInt("segments", box.segments());
+            stats.putDouble("appended", box.appended());
+            stats.putDouble("delivered", box.delivered());
+            stats.putDouble("expired", box.expired());
+            stats.putDouble("compactions", box.compactions());
+        } catch (IOException e) {
+            promise.reject("OUTBOX_UNAVAILABLE", e.getMessage());
+            return;
+        }
+        promise.resolve(stats);
+    }
+
+    /** Drops stored messages for one device, or for all devices when the address is null. */
+    @ReactMethod
+    public void discardOutbox(String deviceAddress, Promise promise) {
+        try {
+            promise.resolve(outbox().discard(deviceAddress));
+        } catch (IOException e) {
+            promise.reject("OUTBOX_UNAVAILABLE", e.getMessage());
+        }
+    }
+
+    /** Radio, crypto and audio counters and latency histograms, shared by all native modules. */
+    @ReactMethod
+    public void getMetricsSnapshot(Promise promise) {
+        promise.resolve(BridgeEvents.metrics(NativeMetrics.GLOBAL));
+    }
+
+    /**
+     * Turns metric recording on or off. With a positive interval, a one-line
+     * summary is also logged under the NativeMetrics tag at that period.
+     */
+    @ReactMethod
+    public void setMetricsEnabled(boolean enabled, int dumpIntervalSeconds, Promise promise) {
+        NativeMetrics.GLOBAL.setEnabled(enabled);
+        radioExecutor.execute(() -> {
+            if (metricsDump != null) {
+                metricsDump.cancel(false);
+                metricsDump = null;
+            }
+            if (enabled && dumpIntervalSeconds > 0) {
+                metricsDump = radioExecutor.scheduleWithFixedDelay(
+                        () -> Log.i("NativeMetrics", NativeMetrics.GLOBAL.dump()),
+                        dumpIntervalSeconds, dumpIntervalSeconds, TimeUnit.SECONDS);
+            }
+        });
+        promise.resolve(enabled);
+    }
+
+    @ReactMethod
+    public void resetMetrics(Promise promise) {
+        NativeMetrics.GLOBAL.reset();
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void getRelayStats(Promise promise) {
+        MeshRelay meshRelay = meshNode.relay();
+        WritableMap stats = Arguments.createMap();
+        stats.putInt("nodeId", meshRelay.localNodeId());
+        stats.putDouble("received", meshRelay.received());
+        stats.putDouble("duplicates", meshRelay.duplicates());
+        stats.putDouble("delivered", meshRelay.delivered());
+        stats.putDouble("forwarded", meshRelay.forwarded());
+        stats.putDouble("expired", meshRelay.expired());
+        stats.putDouble("malformed", meshRelay.malformed());
+        promise.resolve(stats);
+    }
+
+    @ReactMethod
+    public void setFastMode(String deviceAddress, boolean enabled, Promise promise) {
+        PeerConnection connection = connections.get(deviceAddress);
+        if (connection == null || !connection.isConnected()) {
+            promise.reject("DEVICE_NOT_CONNECTED", "Device is not connected");
+            return;
+        }
+        if (enabled && !connection.supportsFastMode()) {
+            promise.reject("FAST_MODE_UNSUPPORTED", "Peer does not support write-without-response");
+            return;
+        }
+        connection.writeQueue.setFastMode(enabled, GattWriteQueue.DEFAULT_CREDITS);
+        promise.resolve(enabled);
+    }
+
+    @ReactMethod
+    public void getLinkStats(String deviceAddress, Promise promise) {
+        PeerConnection connection = connections.get(deviceAddress);
+        if (connection == null) {
+            promise.reject("DEVICE_NOT_CONNECTED", "Device is not connected");
+            return;
+        }
+        GattWriteQueue queue = connection.writeQueue;
+        WritableMap stats = Arguments.createMap();
+        stats.putBoolean("fastMode", queue.isFastMode());
+        stats.putInt("mtu", queue.mtu());
+        stats.putInt("queueDepth", queue.depth());
+        stats.putDouble("writeFailures", queue.writeFailures());
+        stats.putDouble("acknowledgedBytes", queue.bytesSent(GattWriteQueue.MODE_ACKNOWLEDGED));
+        stats.putDouble("acknowledgedPackets", queue.fragmentsSent(GattWriteQueue.MODE_ACKNOWLEDGED));
+        stats.putDouble("acknowledgedBytesPerSecond", queue.throughput(GattWriteQueue.MODE_ACKNOWLEDGED));
+        stats.putDouble("fastBytes", queue.bytesSent(GattWriteQueue.MODE_FAST));
+        stats.putDouble("fastPackets", queue.fragmentsSent(GattWriteQueue.MODE_FAST));
+        stats.putDouble("fastBytesPerSecond", queue.throughput(GattWriteQueue.MODE_FAST));
+        promise.resolve(stats);
+    }
+
+    private SecretKeySpec resolveSessionKey(String keyHandle) {
+        CryptoModule crypto = getReactApplicationContext().getNativeModule(CryptoModule.class);
+        return crypto != null && keyHandle != null ? crypto.sessionKey(keyHandle) : null;
+    }
+
+    // Returns null when the device has no bound key or the payload is not a valid frame,
+    // in which case the raw bytes are forwarded to JS as before.
+    private String decryptFrame(String deviceId, byte[] data) {
+        byte[] plaintext = openFrame(deviceId, data);
+        return plaintext != null ? new String(plaintext, StandardCharsets.UTF_8) : null;
+    }
+
+    private byte[] openFrame(String deviceId, byte[] data) {
+        if (data == null || !CryptoFrameCodec.isFrame(data, 0, data.length)) {
+            return null;
+        }
+        SecretKeySpec secretKey = resolveSessionKey(sessionKeyHandles.get(deviceId));
+        if (secretKey == null) {
+            return null;
+        }
+        try {
+            return CryptoFrameCodec.decrypt(secretKey, data, 0, data.length);
+        } catch (Exception e) {
+            return null;
         }
     }
     
-    private void sendEvent(String eventName, WritableMap params) {
+    @ReactMethod
+    public void setEventBatching(int windowMillis, int maxCount, Promise promise) {
+        eventBatcher.configure(windowMillis, maxCount);
+        promise.resolve(eventBatcher.isBatching());
+    }
+
+    @ReactMethod
+    public void getEventStats(Promise promise) {
+        promise.resolve(BridgeEvents.stats(eventBatcher));
+    }
+
+    private void sendEvent(String eventName, Object params) {
         getReactApplicationContext()
             .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
             .emit(eventName, params);
@@ -0,0 +1,68 @@
+package com.securecomm;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.List;
+
+final class BridgeEvents {
+
+    static final String BATCH_SUFFIX = "Batch";
+
+    private BridgeEvents() {
+    }
+
+    static WritableArray toArray(List<Object> payloads) {
+        WritableArray array = Arguments.createArray();
+        for (Object payload : payloads) {
+            if (payload instanceof ReadableMap) {
+                array.pushMap((ReadableMap) payload);
+            } else if (payload instanceof Number) {
+                array.pushDouble(((Number) payload).doubleValue());
+            } else if (payload instanceof Boolean) {
+                array.pushBoolean((Boolean) payload);
+            } else if (payload == null) {
+                array.pushNull();
+            } else {
+                array.pushString(payload.toString());
+            }
+        }
+        return array;
+    }
+
+    static WritableMap stats(EventBatcher batcher) {
+        WritableMap stats = Arguments.createMap();
+        stats.putBoolean("batching", batcher.isBatching());
+        stats.putDouble("events", batcher.posted());
+        stats.putDouble("coalesced", batcher.coalesced());
+        stats.putDouble("bridgeCalls", batcher.bridgeCalls());
+        stats.putDouble("eventsPerSecond", batcher.postedPerSecond());
+        stats.putDouble("bridgeCallsPerSecond", batcher.bridgeCallsPerSecond());
+        return stats;
+    }
+
+    static WritableMap metrics(NativeMetrics metrics) {
+        WritableMap counters = Arguments.createMap();
+        for (int i = 0; i < NativeMetrics.COUNTER_COUNT; i++) {
+            counters.putDouble(NativeMetrics.COUNTER_NAMES[i], metrics.counter(i));
+        }
+        WritableMap histograms = Arguments.createMap();
+        for (int i = 0; i < NativeMetrics.HISTOGRAM_COUNT; i++) {
+            LatencyHistogram latency = metrics.histogram(i);
+            WritableMap histogram = Arguments.createMap();
+            histogram.putDouble("count", latency.count());
+            histogram.putDouble("meanMillis", latency.meanMillis());
+            histogram.putDouble("p50Millis", latency.percentileMillis(0.5));
+            histogram.putDouble("p99Millis", latency.percentileMillis(0.99));
+            histogram.putDouble("maxMillis", latency.maxMillis());
+            histograms.putMap(NativeMetrics.HISTOGRAM_NAMES[i], histogram);
+        }
+        WritableMap snapshot = Arguments.createMap();
+        snapshot.putBoolean("enabled", metrics.isEnabled());
+        snapshot.putMap("counters", counters);
+        snapshot.putMap("histograms", histograms);
+        return snapshot;
+    }
+}
@@ -0,0 +1,244 @@
+package com.securecomm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Chunked AES-GCM for payloads that should not be held in memory at once.
+ *
+ * <p>A stream starts with a header {@code version(1) | chunkSize(4) | prefix(7)}
+ * followed by records {@code flags(1) | length(4) | ciphertext+tag}. Chunk
+ * {@code i} is sealed under nonce {@code prefix | i | flags}, with the stream
+ * header and the record header as associated data, so chunks cannot be
+ * reordered, dropped or moved between streams, and a stream cut short before
+ * its final chunk is detected.
+ */
+final class ChunkedAead {
+
+    static final byte VERSION = 0x02;
+    static final int DEFAULT_CHUNK_BYTES = 4096;
+    static final int MAX_CHUNK_BYTES = 1 << 20;
+    static final int PREFIX_BYTES = 7;
+    static final int STREAM_HEADER_BYTES = 1 + 4 + PREFIX_BYTES;
+    static final int RECORD_HEADER_BYTES = 1 + 4;
+    static final int RECORD_OVERHEAD = RECORD_HEADER_BYTES + CryptoFrameCodec.TAG_BYTES;
+
+    private static final byte FLAG_FINAL = 0x01;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private ChunkedAead() {
+    }
+
+    static int recordLength(int chunkLength) {
+        return chunkLength + RECORD_OVERHEAD;
+    }
+
+    private abstract static class Stream {
+        final SecretKeySpec key;
+        final byte[] streamHeader;
+        final int chunkSize;
+        final byte[] nonce = new byte[CryptoFrameCodec.NONCE_BYTES];
+        final byte[] recordHeader = new byte[RECORD_HEADER_BYTES];
+        final Cipher cipher;
+        int counter;
+        boolean finished;
+
+        Stream(SecretKeySpec key, byte[] streamHeader) throws GeneralSecurityException {
+            if (streamHeader.length != STREAM_HEADER_BYTES || streamHeader[0] != VERSION) {
+                throw new GeneralSecurityException("Unsupported stream header");
+            }
+            this.key = key;
+            this.streamHeader = streamHeader;
+            this.chunkSize = ByteBuffer.wrap(streamHeader, 1, 4).getInt();
+            if (chunkSize <= 0 || chunkSize > MAX_CHUNK_BYTES) {
+                throw new GeneralSecurityException("Invalid chunk size " + chunkSize);
+            }
+            System.arraycopy(streamHeader, 5, nonce, 0, PREFIX_BYTES);
+            // Streams hold their own Cipher because a transfer can span several worker threads.
+            this.cipher = Cipher.getInstance(SessionCipher.TRANSFORMATION);
+        }
+
+        void init(int mode, byte flags, int length) throws GeneralSecurityException {
+            if (finished) {
+                throw new GeneralSecurityException("Stream already finished");
+            }
+            if (counter == Integer.MAX_VALUE) {
+                throw new GeneralSecurityException("Too many chunks");
+            }
+            nonce[PREFIX_BYTES] = (byte) (counter >>> 24);
+            nonce[PREFIX_BYTES + 1] = (byte) (counter >>> 16);
+            nonce[PREFIX_BYTES + 2] = (byte) (counter >>> 8);
+            nonce[PREFIX_BYTES + 3] = (byte) counter;
+            nonce[PREFIX_BYTES + 4] = flags;
+            recordHeader[0] = flags;
+            recordHeader[1] = (byte) (length >>> 24);
+            recordHeader[2] = (byte) (length >>> 16);
+            recordHeader[3] = (byte) (length >>> 8);
+            recordHeader[4] = (byte) length;
+            cipher.init(mode, key, new GCMParameterSpec(SessionCipher.TAG_BITS, nonce));
+            cipher.updateAAD(streamHeader);
+            cipher.updateAAD(recordHeader);
+            counter++;
+            finished = (flags & FLAG_FINAL) != 0;
+        }
+
+        int chunkSize() {
+            return chunkSize;
+        }
+
+        boolean isFinished() {
+            return finished;
+        }
+    }
+
+    static final class Encryptor extends Stream {
+
+        Encryptor(SecretKeySpec key, int chunkSize) throws GeneralSecurityException {
+            super(key, newHeader(chunkSize));
+        }
+
+        private static byte[] newHeader(int chunkSize) {
+            byte[] header = new byte[STREAM_HEADER_BYTES];
+            ByteBuffer buffer = ByteBuffer.wrap(header);
+            buffer.put(VERSION).putInt(chunkSize);
+            byte[] prefix = new byte[PREFIX_BYTES];
+            RANDOM.nextBytes(prefix);
+            buffer.put(prefix);
+            return header;
+        }
+
+        byte[] header() {
+            return streamHeader.clone();
+        }
+
+        /** Seals the remaining bytes of {@code chunk} (at most one chunk) as the next record. */
+        int encryptChunk(ByteBuffer chunk, ByteBuffer out, boolean last) throws GeneralSecurityException {
+            int length = chunk.remaining();
+            if (length > chunkSize) {
+                throw new GeneralSecurityException("Chunk larger than " + chunkSize + " bytes");
+            }
+            init(Cipher.ENCRYPT_MODE, last ? FLAG_FINAL : 0, length + CryptoFrameCodec.TAG_BYTES);
+            int start = out.position();
+            out.put(recordHeader);
+            CryptoFrameCodec.doFinal(cipher, chunk, out);
+            return out.position() - start;
+        }
+    }
+
+    static final class Decryptor extends Stream {
+
+        Decryptor(SecretKeySpec key, byte[] streamHeader) throws GeneralSecurityException {
+            super(key, streamHeader);
+        }
+
+        /** Opens the record at {@code record}'s position, which must hold the whole record. */
+        int decryptChunk(ByteBuffer record, ByteBuffer out) throws GeneralSecurityException {
+            if (record.remaining() < RECORD_OVERHEAD) {
+                throw new GeneralSecurityException("Record too short");
+            }
+            byte flags = record.get();
+            int length = record.getInt();
+            if (length < CryptoFrameCodec.TAG_BYTES || length > chunkSize + CryptoFrameCodec.TAG_BYTES
+                    || length > record.remaining()) {
+                throw new GeneralSecurityException("Invalid record length " + length);
+            }
+            init(Cipher.DECRYPT_MODE, flags, length);
+            ByteBuffer ciphertext = record.duplicate();
+            ciphertext.limit(ciphertext.position() + length);
+            record.position(record.position() + length);
+            return CryptoFrameCodec.doFinal(cipher, ciphertext, out);
+        }
+    }
+
+    /** Encrypts a channel to a channel with two chunk-sized buffers, whatever the input length. */
+    static long encrypt(SecretKeySpec key, int chunkSize, ReadableByteChannel in, WritableByteChannel out)
+            throws IOException, GeneralSecurityException {
+        Encryptor encryptor = new Encryptor(key, chunkSize);
+        long written = writeFully(out, ByteBuffer.wrap(encryptor.header()));
+        ByteBuffer chunk = ByteBuffer.allocate(chunkSize);
+        ByteBuffer record = ByteBuffer.allocate(recordLength(chunkSize));
+        ByteBuffer lookahead = ByteBuffer.allocate(1);
+        boolean eof = false;
+        boolean pending = false;
+        while (!eof) {
+            chunk.clear();
+            if (pending) {
+                lookahead.flip();
+                chunk.put(lookahead);
+                lookahead.clear();
+                pending = false;
+            }
+            eof = readFully(in, chunk);
+            if (!eof) {
+                // Peek one byte so a chunk that ends exactly at EOF is marked final.
+                eof = readFully(in, lookahead);
+                pending = lookahead.position() > 0;
+            }
+            chunk.flip();
+            record.clear();
+            encryptor.encryptChunk(chunk, record, eof);
+            record.flip();
+            written += writeFully(out, record);
+        }
+        return written;
+    }
+
+    /** Decrypts a channel produced by {@link #encrypt}, failing if the final chunk is missing. */
+    static long decrypt(SecretKeySpec key, ReadableByteChannel in, WritableByteChannel out)
+            throws IOException, GeneralSecurityException {
+        ByteBuffer header = ByteBuffer.allocate(STREAM_HEADER_BYTES);
+        if (readFully(in, header)) {
+            throw new GeneralSecurityException("Truncated stream header");
+        }
+        Decryptor decryptor = new Decryptor(key, header.array());
+        ByteBuffer record = ByteBuffer.allocate(recordLength(decryptor.chunkSize()));
+        ByteBuffer chunk = ByteBuffer.allocate(decryptor.chunkSize());
+        long written = 0;
+        while (!decryptor.isFinished()) {
+            record.clear().limit(RECORD_HEADER_BYTES);
+            if (readFully(in, record)) {
+                throw new GeneralSecurityException("Stream truncated before final chunk");
+            }
+            int length = record.getInt(1);
+            if (length < 0 || length > record.capacity() - RECORD_HEADER_BYTES) {
+                throw new GeneralSecurityException("Invalid record length " + length);
+            }
+            record.limit(RECORD_HEADER_BYTES + length);
+            if (readFully(in, record)) {
+                throw new GeneralSecurityException("Truncated record");
+            }
+            record.flip();
+            chunk.clear();
+            decryptor.decryptChunk(record, chunk);
+            chunk.flip();
+            written += writeFully(out, chunk);
+        }
+        return written;
+    }
+
+    // Fills the buffer up to its limit; returns true if EOF was reached first.
+    private static boolean readFully(ReadableByteChannel in, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer) < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        int count = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,46 @@
+package com.securecomm;
+
+/**
+ * Two-byte marker sent in place of voice while the VAD suppresses silence:
+ * {@code id(1) | attenuation(1)}. The attenuation is the sender's noise floor
+ * in half-dB steps below full scale. It doubles as a keepalive, and lets the
+ * receiver fill the gap with noise at the same level instead of dead silence.
+ */
+final class ComfortNoise {
+
+    static final byte ID = 0x10;
+    static final int MARKER_BYTES = 2;
+
+    private static final double SQRT_3 = Math.sqrt(3);
+
+    private int seed = 0x2545F491;
+
+    static void encode(double level, byte[] out) {
+        double attenuation = level > 0 ? -40 * Math.log10(level) : 255;
+        out[0] = ID;
+        out[1] = (byte) Math.max(0, Math.min(255, Math.round(attenuation)));
+    }
+
+    static boolean isMarker(byte[] frame) {
+        return frame.length == MARKER_BYTES && frame[0] == ID;
+    }
+
+    /** The RMS level carried by a marker, 0..1. */
+    static double level(byte[] marker) {
+        return Math.pow(10, -(marker[1] & 0xff) / 40.0);
+    }
+
+    /** Fills {@code out[0, length)} with white noise of RMS {@code level}. */
+    void fill(short[] out, int length, double level) {
+        // A uniform sample over [-a, a] has RMS a / sqrt(3).
+        int amplitude = (int) Math.min(32767, level * 32768 * SQRT_3);
+        int x = seed;
+        for (int i = 0; i < length; i++) {
+            x ^= x << 13;
+            x ^= x >>> 17;
+            x ^= x << 5;
+            out[i] = (short) ((long) x * amplitude >> 31);
+        }
+        seed = x;
+    }
+}
@@ -0,0 +1,250 @@
+package com.securecomm;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Admission and reconnect policy for outgoing GATT links. Android gives an app
+ * only a handful of concurrent GATT clients and fails quietly past that, so at
+ * most {@code maxLinks} links are reserved at once. A peer is scored by RSSI
+ * plus a bonus for recent traffic. When the pool is full, a new peer displaces
+ * the lowest-scoring link only if it scores higher. Links that drop without
+ * being released are retried with capped exponential backoff.
+ */
+final class ConnectionPool {
+
+    static final int DEFAULT_MAX_LINKS = 6;
+    static final long BASE_BACKOFF_MILLIS = 1_000;
+    static final long MAX_BACKOFF_MILLIS = 60_000;
+    static final int MAX_RECONNECT_ATTEMPTS = 8;
+
+    static final int REUSE = 0;
+    static final int CONNECT = 1;
+    static final int FULL = 2;
+
+    private static final int UNKNOWN_RSSI = -100;
+    private static final long TRAFFIC_WINDOW_MILLIS = 60_000;
+    private static final double TRAFFIC_BONUS = 40;
+    private static final int MAX_KNOWN_PEERS = 256;
+
+    static final class Admission {
+        final int action;
+        /** Link to drop to make room, or null. */
+        final String evict;
+
+        Admission(int action, String evict) {
+            this.action = action;
+            this.evict = evict;
+        }
+    }
+
+    private static final class Peer {
+        int rssi = UNKNOWN_RSSI;
+        long lastTrafficMillis = Long.MIN_VALUE / 2;
+        boolean linked;
+        boolean wanted;
+        int attempts;
+    }
+
+    private final int maxLinks;
+    private final Map<String, Peer> peers = new LinkedHashMap<>(16, 0.75f, true);
+    private int linked;
+
+    private long reuses;
+    private long evictions;
+    private long reconnects;
+    private long abandoned;
+    private long rejected;
+
+    ConnectionPool(int maxLinks) {
+        this.maxLinks = maxLinks;
+    }
+
+    synchronized void recordSighting(String address, int rssi) {
+        peer(address).rssi = rssi;
+    }
+
+    synchronized void recordTraffic(String address, long nowMillis) {
+        peer(address).lastTrafficMillis = nowMillis;
+    }
+
+    /**
+     * Reserves a link for an explicit connect request. The request itself
+     * counts as traffic, so a peer the user is about to talk to normally
+     * outranks an idle link.
+     */
+    synchronized Admission admit(String address, long nowMillis) {
+        Peer peer = peer(address);
+        if (peer.linked) {
+            reuses++;
+            return new Admission(REUSE, null);
+        }
+        peer.lastTrafficMillis = nowMillis;
+        String victim = null;
+        if (linked >= maxLinks) {
+            victim = weakestLink(nowMillis);
+            if (victim == null || score(peers.get(victim), nowMillis) >= score(peer, nowMillis)) {
+                rejected++;
+                return new Admission(FULL, null);
+            }
+            release(victim);
+            evictions++;
+        }
+        reserve(peer);
+        peer.attempts = 0;
+        return new Admission(CONNECT, victim);
+    }
+
+    /** Reserves a link for a scheduled reconnect; never displaces another peer. */
+    synchronized boolean admitReconnect(String address) {
+        Peer peer = peers.get(address);
+        if (peer == null || !peer.wanted || peer.linked) {
+            return false;
+        }
+        if (linked >= maxLinks) {
+            peer.wanted = false;
+            abandoned++;
+            return false;
+        }
+        reserve(peer);
+        reconnects++;
+        return true;
+    }
+
+    synchronized void onConnected(String address) {
+        Peer peer = peers.get(address);
+        if (peer != null) {
+            peer.attempts = 0;
+        }
+    }
+
+    /** Frees the link and returns the delay before reconnecting, or -1 if the peer should stay down. */
+    synchronized long onDisconnected(String address) {
+        Peer peer = peers.get(address);
+        if (peer == null) {
+            return -1;
+        }
+        unreserve(peer);
+        if (!peer.wanted) {
+            return -1;
+        }
+        if (peer.attempts >= MAX_RECONNECT_ATTEMPTS) {
+            peer.wanted = false;
+            abandoned++;
+            return -1;
+        }
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << peer.attempts);
+        peer.attempts++;
+        // Jitter keeps peers that dropped together from reconnecting in lockstep.
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    /** Frees the link and stops any reconnects; used for explicit disconnects and evictions. */
+    synchronized void release(String address) {
+        Peer peer = peers.get(address);
+        if (peer != null) {
+            peer.wanted = false;
+            unreserve(peer);
+        }
+    }
+
+    synchronized boolean isLinked(String address) {
+        Peer peer = peers.get(address);
+        return peer != null && peer.linked;
+    }
+
+    synchronized int linked() {
+        return linked;
+    }
+
+    int maxLinks() {
+        return maxLinks;
+    }
+
+    synchronized long reuses() {
+        return reuses;
+    }
+
+    synchronized long evictions() {
+        return evictions;
+    }
+
+    synchronized long reconnects() {
+        return reconnects;
+    }
+
+    synchronized long abandoned() {
+        return abandoned;
+    }
+
+    synchronized long rejected() {
+        return rejected;
+    }
+
+    private Peer peer(String address) {
+        Peer peer = peers.get(address);
+        if (peer == null) {
+            peer = new Peer();
+            peers.put(address, peer);
+            if (peers.size() > MAX_KNOWN_PEERS) {
+                forgetIdlePeer(address);
+            }
+        }
+        return peer;
+    }
+
+    /**
+     * Drops the least recently used peer that is neither linked nor waiting to
+     * reconnect. Linked and wanted peers are skipped rather than blocking
+     * eviction, so the table stays bounded however old they are.
+     */
+    private void forgetIdlePeer(String keep) {
+        Iterator<Map.Entry<String, Peer>> it = peers.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Peer> entry = it.next();
+            Peer peer = entry.getValue();
+            if (!peer.linked && !peer.wanted && !entry.getKey().equals(keep)) {
+                it.remove();
+                return;
+            }
+        }
+    }
+
+    private void reserve(Peer peer) {
+        peer.linked = true;
+        peer.wanted = true;
+        linked++;
+    }
+
+    private void unreserve(Peer peer) {
+        if (peer.linked) {
+            peer.linked = false;
+            linked--;
+        }
+    }
+
+    private String weakestLink(long nowMillis) {
+        String weakest = null;
+        double weakestScore = Double.MAX_VALUE;
+        for (Map.Entry<String, Peer> entry : peers.entrySet()) {
+            Peer peer = entry.getValue();
+            if (!peer.linked) {
+                continue;
+            }
+            double score = score(peer, nowMillis);
+            if (score < weakestScore) {
+                weakestScore = score;
+                weakest = entry.getKey();
+            }
+        }
+        return weakest;
+    }
+
+    private static double score(Peer peer, long nowMillis) {
+        long age = nowMillis - peer.lastTrafficMillis;
+        double recency = age < TRAFFIC_WINDOW_MILLIS ? 1.0 - (double) age / TRAFFIC_WINDOW_MILLIS : 0;
+        return peer.rssi + TRAFFIC_BONUS * recency;
+    }
+}
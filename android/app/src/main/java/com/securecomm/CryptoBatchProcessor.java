@@ -0,0 +1,146 @@
+package com.securecomm;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs a per-item crypto operation over a batch on a small bounded pool. Each
+ * batch is cut into one contiguous slice per worker, and every item gets its
+ * own success or failure so one bad payload does not fail the whole burst.
+ * Submitting never runs crypto on the caller's thread, which is the React
+ * bridge thread: when the queue is full the whole batch fails at once.
+ */
+final class CryptoBatchProcessor {
+
+    interface Operation {
+        String apply(String input) throws Exception;
+    }
+
+    static final class Result {
+        final String value;
+        final String error;
+
+        private Result(String value, String error) {
+            this.value = value;
+            this.error = error;
+        }
+
+        boolean isSuccess() {
+            return error == null;
+        }
+    }
+
+    private static final int QUEUE_CAPACITY = 64;
+
+    private final ThreadPoolExecutor executor;
+    private final int parallelism;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder items = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    CryptoBatchProcessor(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "crypto-batch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.executor = new ThreadPoolExecutor(this.parallelism, this.parallelism, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY), threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    static int defaultParallelism() {
+        return Math.min(4, Runtime.getRuntime().availableProcessors());
+    }
+
+    CompletableFuture<Result[]> submit(final List<String> inputs, final Operation operation) {
+        final int size = inputs.size();
+        final Result[] results = new Result[size];
+        final long start = System.nanoTime();
+        int slices = Math.min(parallelism, size);
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[slices];
+        for (int slice = 0; slice < slices; slice++) {
+            final int from = (int) ((long) size * slice / slices);
+            final int to = (int) ((long) size * (slice + 1) / slices);
+            try {
+                futures[slice] = CompletableFuture.runAsync(() -> {
+                    for (int i = from; i < to; i++) {
+                        results[i] = apply(inputs.get(i), operation);
+                    }
+                }, executor);
+            } catch (RejectedExecutionException e) {
+                // Slices already queued still run; their results are discarded with the batch.
+                rejected.increment();
+                CompletableFuture<Result[]> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new RejectedExecutionException("Crypto batch queue is full"));
+                return failed;
+            }
+        }
+        return CompletableFuture.allOf(futures).thenApply(ignored -> {
+            batches.increment();
+            items.add(size);
+            busyNanos.add(System.nanoTime() - start);
+            return results;
+        });
+    }
+
+    private Result apply(String input, Operation operation) {
+        if (input == null) {
+            failures.increment();
+            return new Result(null, "Payload is null");
+        }
+        bytesIn.add(input.length());
+        try {
+            return new Result(operation.apply(input), null);
+        } catch (Exception e) {
+            failures.increment();
+            String message = e.getMessage();
+            return new Result(null, message != null ? message : e.getClass().getSimpleName());
+        }
+    }
+
+    long batches() {
+        return batches.sum();
+    }
+
+    long items() {
+        return items.sum();
+    }
+
+    long failures() {
+        return failures.sum();
+    }
+
+    /** Batches refused because the worker queue was full. */
+    long rejected() {
+        return rejected.sum();
+    }
+
+    long bytesIn() {
+        return bytesIn.sum();
+    }
+
+    /** Items per second of wall time spent inside batches. */
+    double itemsPerSecond() {
+        long nanos = busyNanos.sum();
+        return nanos > 0 ? items.sum() * 1e9 / nanos : 0;
+    }
+
+    int parallelism() {
+        return parallelism;
+    }
+}
@@ -0,0 +1,149 @@
+package com.securecomm;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Binary AES-GCM frame: {@code version(1) | nonce(12) | ciphertext+tag}. The
+ * version byte is bound as associated data. Frames are written into and read
+ * from caller-supplied {@link ByteBuffer}s so the BLE path never goes through
+ * Base64 or intermediate Strings.
+ */
+final class CryptoFrameCodec {
+
+    static final byte VERSION = 0x01;
+    static final int NONCE_BYTES = 12;
+    static final int TAG_BYTES = SessionCipher.TAG_BITS / 8;
+    static final int HEADER_BYTES = 1 + NONCE_BYTES;
+    static final int OVERHEAD = HEADER_BYTES + TAG_BYTES;
+
+    private static final byte[] VERSION_AAD = {VERSION};
+
+    private static final ThreadLocal<ByteBuffer> SCRATCH = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(512);
+        }
+    };
+
+    private static final ThreadLocal<byte[]> STAGING = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[512];
+        }
+    };
+
+    private CryptoFrameCodec() {
+    }
+
+    static int frameLength(int plaintextLength) {
+        return plaintextLength + OVERHEAD;
+    }
+
+    static int plaintextLength(int frameLength) {
+        return frameLength - OVERHEAD;
+    }
+
+    static boolean isFrame(byte[] data, int offset, int length) {
+        return length >= OVERHEAD && data[offset] == VERSION;
+    }
+
+    /**
+     * Returns a cleared per-thread buffer with at least {@code capacity} bytes,
+     * growing it only when a larger payload arrives.
+     */
+    static ByteBuffer scratch(int capacity) {
+        ByteBuffer buffer = SCRATCH.get();
+        if (buffer.capacity() < capacity) {
+            buffer = ByteBuffer.allocate(Math.max(capacity, buffer.capacity() * 2));
+            SCRATCH.set(buffer);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /** Encrypts the remaining bytes of {@code plaintext} as one frame at {@code out}'s position. */
+    static int encrypt(SecretKeySpec key, ByteBuffer plaintext, ByteBuffer out) throws GeneralSecurityException {
+        Cipher cipher = SessionCipher.cipher();
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+        int start = out.position();
+        out.put(VERSION);
+        out.put(cipher.getIV());
+        cipher.updateAAD(VERSION_AAD);
+        doFinal(cipher, plaintext, out);
+        return out.position() - start;
+    }
+
+    /** Decrypts one frame from the remaining bytes of {@code frame} into {@code out}. */
+    static int decrypt(SecretKeySpec key, ByteBuffer frame, ByteBuffer out) throws GeneralSecurityException {
+        if (frame.remaining() < OVERHEAD) {
+            throw new GeneralSecurityException("Frame too short");
+        }
+        byte version = frame.get();
+        if (version != VERSION) {
+            throw new GeneralSecurityException("Unsupported frame version " + version);
+        }
+        byte[] nonce = new byte[NONCE_BYTES];
+        frame.get(nonce);
+        Cipher cipher = SessionCipher.cipher();
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(SessionCipher.TAG_BITS, nonce));
+        cipher.updateAAD(VERSION_AAD);
+        return doFinal(cipher, frame, out);
+    }
+
+    static byte[] encrypt(SecretKeySpec key, byte[] plaintext) throws GeneralSecurityException {
+        ByteBuffer out = scratch(frameLength(plaintext.length));
+        encrypt(key, ByteBuffer.wrap(plaintext), out);
+        return copy(out);
+    }
+
+    static byte[] decrypt(SecretKeySpec key, byte[] frame, int offset, int length) throws GeneralSecurityException {
+        ByteBuffer out = scratch(Math.max(0, plaintextLength(length)));
+        decrypt(key, ByteBuffer.wrap(frame, offset, length), out);
+        return copy(out);
+    }
+
+    // Heap buffers go through the array overload, which avoids the provider's
+    // internal copy for ByteBuffer arguments. Direct input, such as pooled audio
+    // frames, is staged through a per-thread array for the same reason.
+    static int doFinal(Cipher cipher, ByteBuffer in, ByteBuffer out) throws GeneralSecurityException {
+        if (!out.hasArray() || out.isReadOnly()) {
+            return cipher.doFinal(in, out);
+        }
+        int length = in.remaining();
+        byte[] input;
+        int inputOffset;
+        if (in.hasArray()) {
+            input = in.array();
+            inputOffset = in.arrayOffset() + in.position();
+        } else {
+            input = staging(length);
+            inputOffset = 0;
+            in.get(input, 0, length);
+        }
+        int written = cipher.doFinal(input, inputOffset, length, out.array(), out.arrayOffset() + out.position());
+        in.position(in.limit());
+        out.position(out.position() + written);
+        return written;
+    }
+
+    private static byte[] staging(int capacity) {
+        byte[] buffer = STAGING.get();
+        if (buffer.length < capacity) {
+            buffer = new byte[Math.max(capacity, buffer.length * 2)];
+            STAGING.set(buffer);
+        }
+        return buffer;
+    }
+
+    private static byte[] copy(ByteBuffer buffer) {
+        buffer.flip();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -5,31 +5,76 @@ import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableType;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.Arguments;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.KeyPair;
-import java.security.KeyPairGenerator;
-import java.security.PrivateKey;
-import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
-import javax.crypto.Cipher;
-import javax.crypto.KeyAgreement;
-import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
 public class CryptoModule extends ReactContextBaseJavaModule {
 
-    private KeyPair keyPair;
+    private static final int MAX_EPHEMERAL_LEASES = 32;
+
+    private final ExecutorService keyExecutor = Executors.newSingleThreadExecutor();
+    private final CompletableFuture<KeyPair> identityKey;
+    private final EphemeralKeyPool ephemeralKeys = new EphemeralKeyPool(EphemeralKeyPool.DEFAULT_CAPACITY, keyExecutor);
+    private final Map<String, KeyPair> ephemeralLeases = new LinkedHashMap<String, KeyPair>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, KeyPair> eldest) {
+            return size() > MAX_EPHEMERAL_LEASES;
+        }
+    };
+    private final SessionKeyRegistry sessionKeys = new SessionKeyRegistry(SessionKeyRegistry.DEFAULT_CAPACITY);
+    private final PeerSecretCache peerSecrets = new PeerSecretCache(PeerSecretCache.DEFAULT_CAPACITY, PeerSecretCache.DEFAULT_TTL_MILLIS);
+    private final CryptoBatchProcessor batchProcessor = new CryptoBatchProcessor(CryptoBatchProcessor.defaultParallelism());
+    private final Map<String, ChunkedAead.Encryptor> encryptStreams = new ConcurrentHashMap<>();
+    private final Map<String, ChunkedAead.Decryptor> decryptStreams = new ConcurrentHashMap<>();
+    private final AtomicLong nextStreamId = new AtomicLong();
+    private final ExecutorService fileExecutor = Executors.newSingleThreadExecutor();
+    private volatile long identityKeyReadyNanos;
+
+    private interface KeyTask {
+        void run(KeyPair keyPair) throws Exception;
+    }
+
+    private interface CipherCall {
+        String run() throws Exception;
+    }
 
     public CryptoModule(ReactApplicationContext reactContext) {
         super(reactContext);
-        try {
-            KeyPairGenerator keyGen = KeyPairGenerator.getInstance("EC");
-            keyGen.initialize(256);
-            this.keyPair = keyGen.generateKeyPair();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        final long start = System.nanoTime();
+        // Key generation takes tens of milliseconds on low-end devices; keep it off module init.
+        this.identityKey = CompletableFuture.supplyAsync(() -> {
+            try {
+                KeyPair keyPair = EphemeralKeyPool.generate();
+                identityKeyReadyNanos = System.nanoTime() - start;
+                return keyPair;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, keyExecutor);
     }
 
     @Override
@@ -37,36 +82,127 @@ public class CryptoModule extends ReactContextBaseJavaModule {
         return "CryptoModule";
     }
 
+    private void withIdentityKey(final Promise promise, final KeyTask task) {
+        identityKey.whenComplete((keyPair, error) -> {
+            if (error != null) {
+                promise.reject("KEY_GENERATION_FAILED", error.getCause() != null ? error.getCause() : error);
+                return;
+            }
+            try {
+                task.run(keyPair);
+            } catch (Exception e) {
+                promise.reject(e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void getPublicKey(final Promise promise) {
+        withIdentityKey(promise, keyPair ->
+                promise.resolve(Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded())));
+    }
+
+    @ReactMethod
+    public void generateSharedSecret(final String remotePublicKeyString, final Promise promise) {
+        withIdentityKey(promise, keyPair -> {
+            PeerSecretCache.Entry peer = peerSecrets.resolve(keyPair, remotePublicKeyString);
+            promise.resolve(Base64.getEncoder().encodeToString(peer.sharedSecret));
+        });
+    }
+
+    @ReactMethod
+    public void deriveSessionKey(final String remotePublicKeyString, final Promise promise) {
+        withIdentityKey(promise, keyPair ->
+                promise.resolve(sessionResult(peerSecrets.resolve(keyPair, remotePublicKeyString))));
+    }
+
+    @ReactMethod
+    public void prepareEphemeralKeys(Promise promise) {
+        ephemeralKeys.refill();
+        promise.resolve(ephemeralKeys.available());
+    }
+
     @ReactMethod
-    public void getPublicKey(Promise promise) {
-        promise.resolve(Base64.getEncoder().encodeToString(this.keyPair.getPublic().getEncoded()));
+    public void getEphemeralPublicKey(Promise promise) {
+        try {
+            EphemeralKeyPool.Lease lease = ephemeralKeys.acquire();
+            synchronized (ephemeralLeases) {
+                ephemeralLeases.put(lease.id, lease.keyPair);
+            }
+            WritableMap result = Arguments.createMap();
+            result.putString("keyId", lease.id);
+            result.putString("publicKey", Base64.getEncoder().encodeToString(lease.keyPair.getPublic().getEncoded()));
+            promise.resolve(result);
+        } catch (Exception e) {
+            promise.reject(e);
+        }
     }
 
+    // Each ephemeral key is used for exactly one handshake and then forgotten.
     @ReactMethod
-    public void generateSharedSecret(String remotePublicKeyString, Promise promise) {
+    public void deriveEphemeralSessionKey(String keyId, String remotePublicKeyString, Promise promise) {
+        KeyPair keyPair;
+        synchronized (ephemeralLeases) {
+            keyPair = ephemeralLeases.remove(keyId);
+        }
+        if (keyPair == null) {
+            promise.reject("UNKNOWN_EPHEMERAL_KEY", "Ephemeral key was already used or expired");
+            return;
+        }
         try {
-            KeyAgreement keyAgreement = KeyAgreement.getInstance("ECDH");
-            keyAgreement.init(this.keyPair.getPrivate());
-            byte[] remotePublicKeyBytes = Base64.getDecoder().decode(remotePublicKeyString);
-            PublicKey remotePublicKey = java.security.KeyFactory.getInstance("EC").generatePublic(new java.security.spec.X509EncodedKeySpec(remotePublicKeyBytes));
-            keyAgreement.doPhase(remotePublicKey, true);
-            byte[] sharedSecret = keyAgreement.generateSecret();
-            promise.resolve(Base64.getEncoder().encodeToString(sharedSecret));
+            promise.resolve(sessionResult(PeerSecretCache.handshake(keyPair, remotePublicKeyString)));
         } catch (Exception e) {
             promise.reject(e);
         }
     }
 
+    @ReactMethod
+    public void getKeyStats(Promise promise) {
+        WritableMap stats = Arguments.createMap();
+        stats.putBoolean("identityKeyReady", identityKey.isDone() && !identityKey.isCompletedExceptionally());
+        stats.putDouble("identityKeyMillis", identityKeyReadyNanos / 1e6);
+        stats.putInt("ephemeralAvailable", ephemeralKeys.available());
+        stats.putDouble("ephemeralHits", ephemeralKeys.hits());
+        stats.putDouble("ephemeralMisses", ephemeralKeys.misses());
+        promise.resolve(stats);
+    }
+
+    private WritableMap sessionResult(PeerSecretCache.Entry peer) {
+        WritableMap result = Arguments.createMap();
+        result.putString("fingerprint", peer.fingerprint);
+        result.putString("keyHandle", sessionKeys.register(peer.encodedSessionKey, peer.fingerprint));
+        return result;
+    }
+
+    /** Forgets a peer's handshake and revokes every session-key handle issued for it. */
+    @ReactMethod
+    public void invalidatePeer(String fingerprint, Promise promise) {
+        boolean cached = peerSecrets.invalidate(fingerprint);
+        int revoked = sessionKeys.revokeOwner(fingerprint);
+        promise.resolve(cached || revoked > 0);
+    }
+
+    @ReactMethod
+    public void clearPeerCache(Promise promise) {
+        peerSecrets.clear();
+        sessionKeys.revokeOwner(null);
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void getPeerCacheStats(Promise promise) {
+        WritableMap stats = Arguments.createMap();
+        stats.putInt("size", peerSecrets.size());
+        stats.putDouble("hits", peerSecrets.hits());
+        stats.putDouble("misses", peerSecrets.misses());
+        promise.resolve(stats);
+    }
+
     @ReactMethod
     public void encrypt(String data, String key, Promise promise) {
         try {
-            byte[] keyBytes = Base64.getDecoder().decode(key);
-            SecretKeySpec secretKey = new SecretKeySpec(keyBytes, "AES");
-            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-            cipher.init(Cipher.ENCRYPT_MODE, secretKey);
-            byte[] iv = cipher.getIV();
-            byte[] encryptedData = cipher.doFinal(data.getBytes());
-            promise.resolve(Base64.getEncoder().encodeToString(iv) + ":" + Base64.getEncoder().encodeToString(encryptedData));
+            promise.resolve(timed(NativeMetrics.CRYPTO_ENCRYPT, NativeMetrics.CRYPTO_ENCRYPT_OPS,
+                    () -> SessionCipher.encryptToString(sessionKeys.keyFor(key), data)));
         } catch (Exception e) {
             promise.reject(e);
         }
@@ -75,18 +211,277 @@ public class CryptoModule extends ReactContextBaseJavaModule {
     @ReactMethod
     public void decrypt(String encryptedData, String key, Promise promise) {
         try {
-            byte[] keyBytes = Base64.getDecoder().decode(key);
-            SecretKeySpec secretKey = new SecretKeySpec(keyBytes, "AES");
-            String[] parts = encryptedData.split(":");
-            byte[] iv = Base64.getDecoder().decode(parts[0]);
-            byte[] data = Base64.getDecoder().decode(parts[1]);
-            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-            GCMParameterSpec gcmParameterSpec = new GCMParameterSpec(128, iv);
-            cipher.init(Cipher.DECRYPT_MODE, secretKey, gcmParameterSpec);
-            byte[] decryptedData = cipher.doFinal(data);
-            promise.resolve(new String(decryptedData));
+            promise.resolve(timed(NativeMetrics.CRYPTO_DECRYPT, NativeMetrics.CRYPTO_DECRYPT_OPS,
+                    () -> SessionCipher.decryptFromString(sessionKeys.keyFor(key), encryptedData)));
+        } catch (Exception e) {
+            promise.reject(e);
+        }
+    }
+
+    @ReactMethod
+    public void registerSessionKey(String key, Promise promise) {
+        try {
+            promise.resolve(sessionKeys.register(key));
         } catch (Exception e) {
             promise.reject(e);
         }
     }
+
+    @ReactMethod
+    public void releaseSessionKey(String keyHandle, Promise promise) {
+        promise.resolve(sessionKeys.release(keyHandle));
+    }
+
+    @ReactMethod
+    public void encryptWithHandle(String data, String keyHandle, Promise promise) {
+        SecretKeySpec secretKey = sessionKeys.resolve(keyHandle);
+        if (secretKey == null) {
+            promise.reject("UNKNOWN_KEY_HANDLE", "Session key is not registered");
+            return;
+        }
+        try {
+            promise.resolve(timed(NativeMetrics.CRYPTO_ENCRYPT, NativeMetrics.CRYPTO_ENCRYPT_OPS,
+                    () -> SessionCipher.encryptToString(secretKey, data)));
+        } catch (Exception e) {
+            promise.reject(e);
+        }
+    }
+
+    @ReactMethod
+    public void encryptFrame(String data, String keyHandle, Promise promise) {
+        SecretKeySpec secretKey = sessionKeys.resolve(keyHandle);
+        if (secretKey == null) {
+            promise.reject("UNKNOWN_KEY_HANDLE", "Session key is not registered");
+            return;
+        }
+        try {
+            promise.resolve(timed(NativeMetrics.CRYPTO_ENCRYPT, NativeMetrics.CRYPTO_ENCRYPT_OPS,
+                    () -> SessionCipher.encryptToFrameString(secretKey, data)));
+        } catch (Exception e) {
+            promise.reject(e);
+        }
+    }
+
+    @ReactMethod
+    public void decryptWithHandle(String encryptedData, String keyHandle, Promise promise) {
+        SecretKeySpec secretKey = sessionKeys.resolve(keyHandle);
+        if (secretKey == null) {
+            promise.reject("UNKNOWN_KEY_HANDLE", "Session key is not registered");
+            return;
+        }
+        try {
+            promise.resolve(timed(NativeMetrics.CRYPTO_DECRYPT, NativeMetrics.CRYPTO_DECRYPT_OPS,
+                    () -> SessionCipher.decryptFromString(secretKey, encryptedData)));
+        } catch (Exception e) {
+            promise.reject(e);
+        }
+    }
+
+    @ReactMethod
+    public void encryptBatch(ReadableArray payloads, String keyHandle, Promise promise) {
+        final SecretKeySpec secretKey = sessionKeys.resolve(keyHandle);
+        if (secretKey == null) {
+            promise.reject("UNKNOWN_KEY_HANDLE", "Session key is not registered");
+            return;
+        }
+        runBatch(payloads, data -> timed(NativeMetrics.CRYPTO_ENCRYPT, NativeMetrics.CRYPTO_ENCRYPT_OPS,
+                () -> SessionCipher.encryptToString(secretKey, data)), promise);
+    }
+
+    @ReactMethod
+    public void decryptBatch(ReadableArray payloads, String keyHandle, Promise promise) {
+        final SecretKeySpec secretKey = sessionKeys.resolve(keyHandle);
+        if (secretKey == null) {
+            promise.reject("UNKNOWN_KEY_HANDLE", "Session key is not registered");
+            return;
+        }
+        runBatch(payloads, data -> timed(NativeMetrics.CRYPTO_DECRYPT, NativeMetrics.CRYPTO_DECRYPT_OPS,
+                () -> SessionCipher.decryptFromString(secretKey, data)), promise);
+    }
+
+    @ReactMethod
+    public void getBatchStats(Promise promise) {
+        WritableMap stats = Arguments.createMap();
+        stats.putDouble("batches", batchProcessor.batches());
+        stats.putDouble("items", batchProcessor.items());
+        stats.putDouble("failures", batchProcessor.failures());
+        stats.putDouble("rejected", batchProcessor.rejected());
+        stats.putDouble("bytesIn", batchProcessor.bytesIn());
+        stats.putDouble("itemsPerSecond", batchProcessor.itemsPerSecond());
+        stats.putInt("workers", batchProcessor.parallelism());
+        promise.resolve(stats);
+    }
+
+    // Records the call's latency in the shared metrics; a failure is counted instead of timed.
+    private static String timed(int histogram, int counter, CipherCall call) throws Exception {
+        long start = NativeMetrics.GLOBAL.startTimer();
+        try {
+            String result = call.run();
+            NativeMetrics.GLOBAL.stopTimer(histogram, counter, start);
+            return result;
+        } catch (Exception e) {
+            NativeMetrics.GLOBAL.increment(NativeMetrics.CRYPTO_FAILURES);
+            throw e;
+        }
+    }
+
+    private void runBatch(ReadableArray payloads, CryptoBatchProcessor.Operation operation, final Promise promise) {
+        List<String> inputs = new ArrayList<>(payloads.size());
+        // A non-string element becomes a failed item rather than failing the batch.
+        boolean[] notString = new boolean[payloads.size()];
+        for (int i = 0; i < payloads.size(); i++) {
+            ReadableType type = payloads.getType(i);
+            notString[i] = type != ReadableType.String && type != ReadableType.Null;
+            inputs.add(type == ReadableType.String ? payloads.getString(i) : null);
+        }
+        batchProcessor.submit(inputs, operation).whenComplete((results, error) -> {
+            if (error != null) {
+                promise.reject("BATCH_FAILED", error.getMessage());
+                return;
+            }
+            WritableArray array = Arguments.createArray();
+            for (int i = 0; i < results.length; i++) {
+                CryptoBatchProcessor.Result result = results[i];
+                WritableMap item = Arguments.createMap();
+                item.putBoolean("ok", result.isSuccess());
+                if (notString[i]) {
+                    item.putString("error", "Payload is not a string");
+                } else if (result.isSuccess()) {
+                    item.putString("data", result.value);
+                } else {
+                    item.putString("error", result.error);
+                }
+                array.pushMap(item);
+            }
+            promise.resolve(array);
+        });
+    }
+
+    @ReactMethod
+    public void openEncryptStream(String keyHandle, int chunkSize, Promise promise) {
+        SecretKeySpec secretKey = sessionKeys.resolve(keyHandle);
+        if (secretKey == null) {
+            promise.reject("UNKNOWN_KEY_HANDLE", "Session key is not registered");
+            return;
+        }
+        try {
+            ChunkedAead.Encryptor encryptor = new ChunkedAead.Encryptor(secretKey,
+                    chunkSize > 0 ? chunkSize : ChunkedAead.DEFAULT_CHUNK_BYTES);
+            String streamId = "es" + nextStreamId.incrementAndGet();
+            encryptStreams.put(streamId, encryptor);
+            WritableMap result = Arguments.createMap();
+            result.putString("streamId", streamId);
+            result.putString("header", Base64.getEncoder().encodeToString(encryptor.header()));
+            result.putInt("chunkSize", encryptor.chunkSize());
+            promise.resolve(result);
+        } catch (Exception e) {
+            promise.reject(e);
+        }
+    }
+
+    @ReactMethod
+    public void encryptStreamChunk(String streamId, String chunk, boolean last, Promise promise) {
+        ChunkedAead.Encryptor encryptor = encryptStreams.get(streamId);
+        if (encryptor == null) {
+            promise.reject("UNKNOWN_STREAM", "Stream is not open");
+            return;
+        }
+        try {
+            byte[] plaintext = Base64.getDecoder().decode(chunk);
+            ByteBuffer record = ByteBuffer.allocate(ChunkedAead.recordLength(plaintext.length));
+            encryptor.encryptChunk(ByteBuffer.wrap(plaintext), record, last);
+            if (encryptor.isFinished()) {
+                encryptStreams.remove(streamId);
+            }
+            promise.resolve(Base64.getEncoder().encodeToString(record.array()));
+        } catch (Exception e) {
+            encryptStreams.remove(streamId);
+            promise.reject(e);
+        }
+    }
+
+    @ReactMethod
+    public void openDecryptStream(String keyHandle, String header, Promise promise) {
+        SecretKeySpec secretKey = sessionKeys.resolve(keyHandle);
+        if (secretKey == null) {
+            promise.reject("UNKNOWN_KEY_HANDLE", "Session key is not registered");
+            return;
+        }
+        try {
+            ChunkedAead.Decryptor decryptor = new ChunkedAead.Decryptor(secretKey, Base64.getDecoder().decode(header));
+            String streamId = "ds" + nextStreamId.incrementAndGet();
+            decryptStreams.put(streamId, decryptor);
+            promise.resolve(streamId);
+        } catch (Exception e) {
+            promise.reject(e);
+        }
+    }
+
+    @ReactMethod
+    public void decryptStreamChunk(String streamId, String record, Promise promise) {
+        ChunkedAead.Decryptor decryptor = decryptStreams.get(streamId);
+        if (decryptor == null) {
+            promise.reject("UNKNOWN_STREAM", "Stream is not open");
+            return;
+        }
+        try {
+            ByteBuffer in = ByteBuffer.wrap(Base64.getDecoder().decode(record));
+            ByteBuffer out = ByteBuffer.allocate(decryptor.chunkSize());
+            decryptor.decryptChunk(in, out);
+            if (decryptor.isFinished()) {
+                decryptStreams.remove(streamId);
+            }
+            WritableMap result = Arguments.createMap();
+            result.putString("data", Base64.getEncoder().encodeToString(Arrays.copyOf(out.array(), out.position())));
+            result.putBoolean("last", decryptor.isFinished());
+            promise.resolve(result);
+        } catch (Exception e) {
+            decryptStreams.remove(streamId);
+            promise.reject(e);
+        }
+    }
+
+    @ReactMethod
+    public void closeStream(String streamId, Promise promise) {
+        promise.resolve(encryptStreams.remove(streamId) != null || decryptStreams.remove(streamId) != null);
+    }
+
+    @ReactMethod
+    public void encryptFile(final String inputPath, final String outputPath, String keyHandle, final Promise promise) {
+        final SecretKeySpec secretKey = sessionKeys.resolve(keyHandle);
+        if (secretKey == null) {
+            promise.reject("UNKNOWN_KEY_HANDLE", "Session key is not registered");
+            return;
+        }
+        fileExecutor.execute(() -> {
+            try (FileChannel in = new FileInputStream(inputPath).getChannel();
+                 FileChannel out = new FileOutputStream(outputPath).getChannel()) {
+                promise.resolve((double) ChunkedAead.encrypt(secretKey, ChunkedAead.DEFAULT_CHUNK_BYTES, in, out));
+            } catch (Exception e) {
+                promise.reject("ENCRYPT_FILE_FAILED", e.getMessage());
+            }
+        });
+    }
+
+    @ReactMethod
+    public void decryptFile(final String inputPath, final String outputPath, String keyHandle, final Promise promise) {
+        final SecretKeySpec secretKey = sessionKeys.resolve(keyHandle);
+        if (secretKey == null) {
+            promise.reject("UNKNOWN_KEY_HANDLE", "Session key is not registered");
+            return;
+        }
+        fileExecutor.execute(() -> {
+            try (FileChannel in = new FileInputStream(inputPath).getChannel();
+                 FileChannel out = new FileOutputStream(outputPath).getChannel()) {
+                promise.resolve((double) ChunkedAead.decrypt(secretKey, in, out));
+            } catch (Exception e) {
+                new File(outputPath).delete();
+                promise.reject("DECRYPT_FILE_FAILED", e.getMessage());
+            }
+        });
+    }
+
+    SecretKeySpec sessionKey(String keyHandle) {
+        return sessionKeys.resolve(keyHandle);
+    }
 }
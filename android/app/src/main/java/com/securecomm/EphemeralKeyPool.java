@@ -0,0 +1,93 @@
+package com.securecomm;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of pre-generated EC P-256 key pairs for per-session forward secrecy.
+ * Acquiring a key is a queue poll; the pool is topped back up on a background
+ * executor, and an empty pool falls back to generating inline.
+ */
+final class EphemeralKeyPool {
+
+    static final int DEFAULT_CAPACITY = 4;
+
+    static final class Lease {
+        final String id;
+        final KeyPair keyPair;
+
+        Lease(String id, KeyPair keyPair) {
+            this.id = id;
+            this.keyPair = keyPair;
+        }
+    }
+
+    private final BlockingQueue<KeyPair> ready;
+    private final Executor executor;
+    private final AtomicBoolean refilling = new AtomicBoolean();
+    private final AtomicLong nextId = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    EphemeralKeyPool(int capacity, Executor executor) {
+        this.ready = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.executor = executor;
+    }
+
+    static KeyPair generate() throws GeneralSecurityException {
+        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("EC");
+        keyGen.initialize(256);
+        return keyGen.generateKeyPair();
+    }
+
+    Lease acquire() throws GeneralSecurityException {
+        KeyPair keyPair = ready.poll();
+        if (keyPair != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            keyPair = generate();
+        }
+        refill();
+        return new Lease("ek" + nextId.incrementAndGet(), keyPair);
+    }
+
+    /** Schedules a background top-up unless one is already running. */
+    void refill() {
+        if (ready.remainingCapacity() == 0 || !refilling.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                while (ready.remainingCapacity() > 0) {
+                    if (!ready.offer(generate())) {
+                        break;
+                    }
+                }
+            } catch (GeneralSecurityException e) {
+                // Leave the pool short; acquire() generates inline until the next refill succeeds.
+            } finally {
+                refilling.set(false);
+            }
+        });
+    }
+
+    int available() {
+        return ready.size();
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+}
@@ -0,0 +1,173 @@
+package com.securecomm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces native-to-JS events so a burst of scan results or audio buffers
+ * costs one bridge crossing per window instead of one per event. Events are
+ * buffered per name and flushed after {@code windowMillis} or once
+ * {@code maxCount} are pending. Events posted with a dedupe key replace the
+ * pending event with the same key, so only the newest survives the window.
+ * With a window of zero every event is passed straight through.
+ */
+final class EventBatcher {
+
+    interface Emitter {
+        void emit(String eventName, Object payload);
+
+        void emitBatch(String eventName, List<Object> payloads);
+    }
+
+    private final Emitter emitter;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, LinkedHashMap<Object, Object>> pending = new HashMap<>();
+    private long windowMillis;
+    private int maxCount = 1;
+    private long sequence;
+    private boolean closed;
+
+    private final LongAdder posted = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder bridgeCalls = new LongAdder();
+    private volatile long statsSinceNanos = System.nanoTime();
+
+    EventBatcher(Emitter emitter, ScheduledExecutorService scheduler) {
+        this.emitter = emitter;
+        this.scheduler = scheduler;
+    }
+
+    /** A window of zero disables batching; pending events are flushed first. */
+    void configure(long windowMillis, int maxCount) {
+        flushAll();
+        synchronized (this) {
+            this.windowMillis = Math.max(0, windowMillis);
+            this.maxCount = Math.max(1, maxCount);
+        }
+        resetStats();
+    }
+
+    synchronized boolean isBatching() {
+        return windowMillis > 0;
+    }
+
+    void post(String eventName, Object payload) {
+        post(eventName, null, payload);
+    }
+
+    void post(final String eventName, Object dedupeKey, Object payload) {
+        posted.increment();
+        List<Object> ready = null;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (windowMillis > 0) {
+                LinkedHashMap<Object, Object> events = pending.get(eventName);
+                if (events == null) {
+                    final LinkedHashMap<Object, Object> batch = new LinkedHashMap<>();
+                    events = batch;
+                    pending.put(eventName, batch);
+                    // The timer belongs to this batch; if a count flush sends it first, the timer must
+                    // not cut short the window of the batch that replaces it.
+                    scheduler.schedule(() -> flushBatch(eventName, batch), windowMillis, TimeUnit.MILLISECONDS);
+                }
+                Object key = dedupeKey != null ? dedupeKey : Long.valueOf(sequence++);
+                if (events.put(key, payload) != null) {
+                    coalesced.increment();
+                }
+                if (events.size() < maxCount) {
+                    return;
+                }
+                pending.remove(eventName);
+                ready = new ArrayList<>(events.values());
+            }
+        }
+        bridgeCalls.increment();
+        if (ready != null) {
+            emitter.emitBatch(eventName, ready);
+        } else {
+            emitter.emit(eventName, payload);
+        }
+    }
+
+    void flush(String eventName) {
+        LinkedHashMap<Object, Object> events;
+        synchronized (this) {
+            events = pending.remove(eventName);
+        }
+        if (events != null && !events.isEmpty()) {
+            bridgeCalls.increment();
+            emitter.emitBatch(eventName, new ArrayList<>(events.values()));
+        }
+    }
+
+    private void flushBatch(String eventName, LinkedHashMap<Object, Object> batch) {
+        synchronized (this) {
+            if (!pending.remove(eventName, batch)) {
+                return;
+            }
+        }
+        if (!batch.isEmpty()) {
+            bridgeCalls.increment();
+            emitter.emitBatch(eventName, new ArrayList<>(batch.values()));
+        }
+    }
+
+    /** Stops the timer thread and drops pending batches; later posts are ignored. */
+    void shutdown() {
+        synchronized (this) {
+            closed = true;
+            pending.clear();
+        }
+        scheduler.shutdownNow();
+    }
+
+    void flushAll() {
+        List<String> names;
+        synchronized (this) {
+            names = new ArrayList<>(pending.keySet());
+        }
+        for (String name : names) {
+            flush(name);
+        }
+    }
+
+    void resetStats() {
+        posted.reset();
+        coalesced.reset();
+        bridgeCalls.reset();
+        statsSinceNanos = System.nanoTime();
+    }
+
+    long posted() {
+        return posted.sum();
+    }
+
+    long coalesced() {
+        return coalesced.sum();
+    }
+
+    long bridgeCalls() {
+        return bridgeCalls.sum();
+    }
+
+    double postedPerSecond() {
+        return perSecond(posted.sum());
+    }
+
+    double bridgeCallsPerSecond() {
+        return perSecond(bridgeCalls.sum());
+    }
+
+    private double perSecond(long count) {
+        long elapsed = System.nanoTime() - statsSinceNanos;
+        return elapsed > 0 ? count * 1e9 / elapsed : 0;
+    }
+}
@@ -0,0 +1,273 @@
+package com.securecomm;
+
+import java.util.List;
+
+/**
+ * Serialises writes on one GATT connection. Android allows a single GATT
+ * operation in flight, so each fragment is handed to the {@link Sink} only
+ * after the previous one is acknowledged through {@link #onWriteComplete}.
+ * Waiting messages are ordered by an {@link OutboundScheduler}. An emergency
+ * message takes over the link at the next fragment boundary, even in the
+ * middle of a lower-class message; the reassembler keys partial messages by id,
+ * so the interrupted one simply resumes afterwards. {@link #enqueue} returns
+ * false when the message's class is full and refuses work, so callers can
+ * push back instead of piling up writes.
+ *
+ * <p>In fast mode fragments go out as write-without-response, which skips the
+ * ATT round trip. Each one spends a credit; once the window is spent the next
+ * fragment is sent as an acknowledged write, and its response refills the
+ * window, so a slow receiver throttles the sender instead of dropping data.
+ */
+final class GattWriteQueue {
+
+    static final int DEFAULT_CREDITS = 8;
+
+    static final int MODE_ACKNOWLEDGED = 0;
+    static final int MODE_FAST = 1;
+
+    interface Sink {
+        boolean write(byte[] fragment, boolean withResponse);
+    }
+
+    interface Completion {
+        void onComplete(boolean success, String error);
+    }
+
+    private static final class Message {
+        final byte[] payload;
+        final int kind;
+        final int trafficClass;
+        final Completion completion;
+        int messageId;
+        int nextIndex;
+        int count;
+        int mtu;
+
+        Message(byte[] payload, int kind, int trafficClass, Completion completion) {
+            this.payload = payload;
+            this.kind = kind;
+            this.trafficClass = trafficClass;
+            this.completion = completion;
+        }
+    }
+
+    private final Sink sink;
+    private final OutboundScheduler<Message> pending;
+    private Message current;
+    private boolean inFlight;
+    private int mtu = PacketFragmenter.DEFAULT_MTU;
+    private int nextMessageId;
+
+    private boolean fastMode;
+    private int creditWindow = DEFAULT_CREDITS;
+    private int credits;
+    private int inFlightMode;
+    private int inFlightBytes;
+    private long inFlightSinceNanos;
+    private final long[] bytesSent = new long[2];
+    private final long[] fragmentsSent = new long[2];
+    private final long[] busyNanos = new long[2];
+    private long writeFailures;
+
+    GattWriteQueue(Sink sink, OutboundScheduler.Stats stats) {
+        this.sink = sink;
+        this.pending = new OutboundScheduler<>(stats);
+    }
+
+    synchronized void setMtu(int mtu) {
+        this.mtu = mtu;
+    }
+
+    synchronized int mtu() {
+        return mtu;
+    }
+
+    synchronized void setFastMode(boolean enabled, int creditWindow) {
+        this.fastMode = enabled;
+        this.creditWindow = Math.max(1, creditWindow);
+        this.credits = enabled ? this.creditWindow : 0;
+    }
+
+    synchronized boolean isFastMode() {
+        return fastMode;
+    }
+
+    synchronized long bytesSent(int mode) {
+        return bytesSent[mode];
+    }
+
+    synchronized long fragmentsSent(int mode) {
+        return fragmentsSent[mode];
+    }
+
+    /** Payload bytes per second of time spent with a write of the given mode in flight. */
+    synchronized double throughput(int mode) {
+        return busyNanos[mode] > 0 ? bytesSent[mode] * 1e9 / busyNanos[mode] : 0;
+    }
+
+    synchronized long writeFailures() {
+        return writeFailures;
+    }
+
+    synchronized int depth() {
+        return pending.size() + (current != null ? 1 : 0);
+    }
+
+    synchronized int depth(int trafficClass) {
+        return pending.size(trafficClass) + (current != null && current.trafficClass == trafficClass ? 1 : 0);
+    }
+
+    /** Queues a message in an {@link OutboundScheduler} class; false means the class is full. */
+    boolean enqueue(byte[] payload, int trafficClass, Completion completion) {
+        return enqueue(new Message(payload, PacketFragmenter.KIND_DIRECT, trafficClass, completion));
+    }
+
+    /** Like {@link #enqueue}, for a {@link MeshPacket}; the receiver hands it to its mesh node. */
+    boolean enqueueMesh(byte[] packet, int trafficClass, Completion completion) {
+        return enqueue(new Message(packet, PacketFragmenter.KIND_MESH, trafficClass, completion));
+    }
+
+    private boolean enqueue(Message message) {
+        byte[] payload = message.payload;
+        Completion completion = message.completion;
+        if (payload.length > PacketFragmenter.maxPayload(PacketFragmenter.REQUESTED_MTU)) {
+            completion.onComplete(false, "Payload too large");
+            return true;
+        }
+        Message evicted;
+        synchronized (this) {
+            if (!pending.offer(message.trafficClass, message, payload.length, System.nanoTime())) {
+                return false;
+            }
+            evicted = pending.takeEvicted();
+        }
+        if (evicted != null) {
+            evicted.completion.onComplete(false, "Dropped for a newer frame");
+        }
+        pump();
+        return true;
+    }
+
+    /** Called from onCharacteristicWrite once the in-flight fragment is done. */
+    void onWriteComplete(boolean success) {
+        Message finished = null;
+        synchronized (this) {
+            if (!inFlight || current == null) {
+                return;
+            }
+            inFlight = false;
+            long elapsed = System.nanoTime() - inFlightSinceNanos;
+            busyNanos[inFlightMode] += elapsed;
+            NativeMetrics metrics = NativeMetrics.GLOBAL;
+            if (success) {
+                bytesSent[inFlightMode] += inFlightBytes;
+                fragmentsSent[inFlightMode]++;
+                metrics.increment(NativeMetrics.BLE_FRAGMENTS_SENT);
+                metrics.add(NativeMetrics.BLE_BYTES_SENT, inFlightBytes);
+                if (inFlightMode == MODE_ACKNOWLEDGED) {
+                    metrics.record(NativeMetrics.BLE_WRITE_RTT, elapsed);
+                    if (fastMode) {
+                        credits = creditWindow;
+                    }
+                }
+            } else {
+                writeFailures++;
+                metrics.increment(NativeMetrics.BLE_WRITE_FAILURES);
+            }
+            if (!success) {
+                finished = current;
+                current = null;
+            } else if (current.nextIndex >= current.count) {
+                finished = current;
+                current = null;
+                success = true;
+            }
+        }
+        if (finished != null) {
+            finished.completion.onComplete(success, success ? null : "GATT write failed");
+        }
+        pump();
+    }
+
+    /** Fails everything queued, e.g. when the link drops. */
+    void clear(String reason) {
+        List<Message> failed;
+        synchronized (this) {
+            failed = pending.drain();
+            if (current != null) {
+                failed.add(0, current);
+            }
+            current = null;
+            inFlight = false;
+        }
+        for (Message message : failed) {
+            message.completion.onComplete(false, reason);
+        }
+    }
+
+    // The sink is a binder call, so it runs outside the lock; inFlight keeps other pumps out meanwhile.
+    private void pump() {
+        while (true) {
+            Message sending;
+            byte[] fragment = null;
+            boolean withResponse = false;
+            String reason = null;
+            synchronized (this) {
+                if (inFlight) {
+                    return;
+                }
+                if (current != null && current.trafficClass != OutboundScheduler.EMERGENCY && pending.hasUrgent()) {
+                    pending.requeue(current.trafficClass, current, current.payload.length);
+                    current = null;
+                }
+                if (current == null) {
+                    current = pending.poll(System.nanoTime());
+                    if (current == null) {
+                        return;
+                    }
+                }
+                if (current.count == 0) {
+                    current.mtu = mtu;
+                    current.count = PacketFragmenter.fragmentCount(current.payload.length, current.mtu);
+                    current.messageId = nextMessageId;
+                    nextMessageId = (nextMessageId + 1) & 0xffff;
+                }
+                sending = current;
+                if (current.count > PacketFragmenter.MAX_FRAGMENTS) {
+                    reason = "Payload too large for MTU " + current.mtu;
+                    current = null;
+                } else {
+                    fragment = PacketFragmenter.fragment(current.payload, current.kind, current.messageId,
+                            current.nextIndex, current.mtu);
+                    // Advance before writing: a synchronous sink may acknowledge from inside write().
+                    current.nextIndex++;
+                    withResponse = !fastMode || credits == 0;
+                    if (!withResponse) {
+                        credits--;
+                    }
+                    inFlight = true;
+                    inFlightMode = withResponse ? MODE_ACKNOWLEDGED : MODE_FAST;
+                    inFlightBytes = fragment.length;
+                    inFlightSinceNanos = System.nanoTime();
+                }
+            }
+            if (reason == null) {
+                if (sink.write(fragment, withResponse)) {
+                    return;
+                }
+                synchronized (this) {
+                    if (current != sending || !inFlight) {
+                        // clear() already failed the message while the write was being refused.
+                        continue;
+                    }
+                    inFlight = false;
+                    writeFailures++;
+                    NativeMetrics.GLOBAL.increment(NativeMetrics.BLE_WRITE_FAILURES);
+                    current = null;
+                }
+                reason = "Failed to send message";
+            }
+            sending.completion.onComplete(false, reason);
+        }
+    }
+}
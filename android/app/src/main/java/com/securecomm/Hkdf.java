@@ -0,0 +1,47 @@
+package com.securecomm;
+
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/** HKDF-SHA256 (RFC 5869). */
+final class Hkdf {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int HASH_BYTES = 32;
+
+    private Hkdf() {
+    }
+
+    static byte[] derive(byte[] salt, byte[] inputKeyMaterial, byte[] info, int length) throws GeneralSecurityException {
+        return expand(extract(salt, inputKeyMaterial), info, length);
+    }
+
+    static byte[] extract(byte[] salt, byte[] inputKeyMaterial) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance(ALGORITHM);
+        mac.init(new SecretKeySpec(salt != null && salt.length > 0 ? salt : new byte[HASH_BYTES], ALGORITHM));
+        return mac.doFinal(inputKeyMaterial);
+    }
+
+    static byte[] expand(byte[] pseudoRandomKey, byte[] info, int length) throws GeneralSecurityException {
+        if (length > 255 * HASH_BYTES) {
+            throw new GeneralSecurityException("HKDF output too long");
+        }
+        Mac mac = Mac.getInstance(ALGORITHM);
+        mac.init(new SecretKeySpec(pseudoRandomKey, ALGORITHM));
+        byte[] output = new byte[length];
+        byte[] block = new byte[0];
+        int offset = 0;
+        for (int counter = 1; offset < length; counter++) {
+            mac.update(block);
+            mac.update(info);
+            mac.update((byte) counter);
+            block = mac.doFinal();
+            int count = Math.min(block.length, length - offset);
+            System.arraycopy(block, 0, output, offset, count);
+            offset += count;
+        }
+        return output;
+    }
+}
@@ -0,0 +1,144 @@
+package com.securecomm;
+
+/**
+ * IMA ADPCM at 4 bits per sample. A frame is
+ * {@code codecId(1) | predictor(2) | stepIndex(1) | samples/2 nibbles}; the
+ * header carries the encoder state so each frame decodes on its own.
+ */
+final class ImaAdpcmCodec implements VoiceCodec {
+
+    static final byte ID_8K = 0x11;
+    static final byte ID_16K = 0x12;
+
+    private static final int HEADER_BYTES = 4;
+
+    private static final int[] INDEX_TABLE = {-1, -1, -1, -1, 2, 4, 6, 8, -1, -1, -1, -1, 2, 4, 6, 8};
+
+    private static final int[] STEP_TABLE = {
+            7, 8, 9, 10, 11, 12, 13, 14, 16, 17, 19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+            50, 55, 60, 66, 73, 80, 88, 97, 107, 118, 130, 143, 157, 173, 190, 209, 230, 253, 279, 307,
+            337, 371, 408, 449, 494, 544, 598, 658, 724, 796, 876, 963, 1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066,
+            2272, 2499, 2749, 3024, 3327, 3660, 4026, 4428, 4871, 5358, 5894, 6484, 7132, 7845, 8630, 9493, 10442,
+            11487, 12635, 13899, 15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767
+    };
+
+    private final int sampleRate;
+    private final int frameSamples;
+    private final byte codecId;
+    private int predictor;
+    private int stepIndex;
+
+    ImaAdpcmCodec(int sampleRate) {
+        this.sampleRate = sampleRate;
+        this.frameSamples = sampleRate * FRAME_MILLIS / 1000;
+        this.codecId = sampleRate == 8_000 ? ID_8K : ID_16K;
+    }
+
+    @Override
+    public byte codecId() {
+        return codecId;
+    }
+
+    @Override
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int frameSamples() {
+        return frameSamples;
+    }
+
+    @Override
+    public int encodedFrameBytes() {
+        return HEADER_BYTES + frameSamples / 2;
+    }
+
+    @Override
+    public int encode(short[] pcm, int offset, byte[] out, int outOffset) {
+        out[outOffset] = codecId;
+        out[outOffset + 1] = (byte) predictor;
+        out[outOffset + 2] = (byte) (predictor >> 8);
+        out[outOffset + 3] = (byte) stepIndex;
+        int p = outOffset + HEADER_BYTES;
+        for (int i = 0; i < frameSamples; i += 2) {
+            int low = encodeSample(pcm[offset + i]);
+            int high = encodeSample(pcm[offset + i + 1]);
+            out[p++] = (byte) (low | (high << 4));
+        }
+        return p - outOffset;
+    }
+
+    @Override
+    public int decode(byte[] in, int inOffset, short[] pcm, int offset) {
+        predictor = (short) ((in[inOffset + 1] & 0xff) | (in[inOffset + 2] << 8));
+        stepIndex = Math.min(88, in[inOffset + 3] & 0xff);
+        int p = inOffset + HEADER_BYTES;
+        for (int i = 0; i < frameSamples; i += 2) {
+            int packed = in[p++];
+            pcm[offset + i] = (short) decodeSample(packed & 0x0f);
+            pcm[offset + i + 1] = (short) decodeSample((packed >> 4) & 0x0f);
+        }
+        return frameSamples;
+    }
+
+    private int encodeSample(int sample) {
+        int step = STEP_TABLE[stepIndex];
+        int diff = sample - predictor;
+        int code = 0;
+        if (diff < 0) {
+            code = 8;
+            diff = -diff;
+        }
+        int delta = step >> 3;
+        if (diff >= step) {
+            code |= 4;
+            diff -= step;
+            delta += step;
+        }
+        step >>= 1;
+        if (diff >= step) {
+            code |= 2;
+            diff -= step;
+            delta += step;
+        }
+        step >>= 1;
+        if (diff >= step) {
+            code |= 1;
+            delta += step;
+        }
+        advance(code, delta);
+        return code;
+    }
+
+    private int decodeSample(int code) {
+        int step = STEP_TABLE[stepIndex];
+        int delta = step >> 3;
+        if ((code & 4) != 0) {
+            delta += step;
+        }
+        if ((code & 2) != 0) {
+            delta += step >> 1;
+        }
+        if ((code & 1) != 0) {
+            delta += step >> 2;
+        }
+        advance(code, delta);
+        return predictor;
+    }
+
+    private void advance(int code, int delta) {
+        predictor += (code & 8) != 0 ? -delta : delta;
+        if (predictor > Short.MAX_VALUE) {
+            predictor = Short.MAX_VALUE;
+        } else if (predictor < Short.MIN_VALUE) {
+            predictor = Short.MIN_VALUE;
+        }
+        stepIndex += INDEX_TABLE[code];
+        if (stepIndex < 0) {
+            stepIndex = 0;
+        } else if (stepIndex > 88) {
+            stepIndex = 88;
+        }
+    }
+}
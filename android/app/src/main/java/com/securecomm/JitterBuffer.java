@@ -0,0 +1,255 @@
+package com.securecomm;
+
+/**
+ * Reorders voice frames by 16-bit sequence number and releases them at
+ * playout pace. Each talk spurt first buffers up to a target depth, derived
+ * from the measured arrival jitter (RFC 3550 estimator) and kept within
+ * {@code minDepth..maxDepth}. Once playing, a gap yields {@link #MISSING} so
+ * the caller can conceal it. An underrun holds the playout position, so the
+ * buffer deepens by a frame. A backlog well past the target is trimmed. After
+ * {@link #MAX_CONCEALED} consecutive underruns the spurt is treated as over
+ * and the buffer refills.
+ */
+final class JitterBuffer {
+
+    /** Returned by {@link #take()} when the frame due now never arrived. */
+    static final byte[] MISSING = new byte[0];
+    static final int MAX_CONCEALED = 5;
+
+    private static final int SEQUENCE_MASK = 0xffff;
+    private static final int NO_SEQUENCE = -1;
+
+    private final byte[][] slots;
+    private final int[] slotSequences;
+    private double frameMillis;
+    private final int minDepth;
+    private final int maxDepth;
+
+    private boolean playing;
+    private int nextSequence = NO_SEQUENCE;
+    private int count;
+    private int consecutiveMisses;
+    private int targetDepth;
+    private double jitterMillis;
+    private long lastTransit = Long.MIN_VALUE;
+
+    private long received;
+    private long late;
+    private long duplicates;
+    private long lost;
+    private long underruns;
+    private long concealed;
+    private long trimmed;
+
+    JitterBuffer(int capacity, int frameMillis, int minDepth, int maxDepth) {
+        this.slots = new byte[capacity][];
+        this.slotSequences = new int[capacity];
+        this.frameMillis = frameMillis;
+        this.minDepth = minDepth;
+        this.maxDepth = Math.min(maxDepth, capacity - 1);
+        this.targetDepth = minDepth;
+    }
+
+    /**
+     * Sets how much audio each sequence number carries, for frames whose
+     * length is only known on arrival, such as raw PCM capture buffers.
+     */
+    synchronized void setFrameMillis(double frameMillis) {
+        if (frameMillis > 0 && frameMillis != this.frameMillis) {
+            this.frameMillis = frameMillis;
+            // Transit measured at the old duration is not comparable with the new.
+            lastTransit = Long.MIN_VALUE;
+        }
+    }
+
+    /** Queues a frame; returns false if it is late, a duplicate or too far ahead. */
+    synchronized boolean offer(int sequence, byte[] frame, long nowMillis) {
+        sequence &= SEQUENCE_MASK;
+        received++;
+        updateJitter(sequence, nowMillis);
+        if (nextSequence == NO_SEQUENCE) {
+            nextSequence = sequence;
+        }
+        int ahead = (short) (sequence - nextSequence);
+        if (ahead < 0) {
+            if (playing) {
+                late++;
+                return false;
+            }
+            // Still filling: an earlier frame of the spurt moves the start back.
+            if (count + (-ahead) >= slots.length) {
+                late++;
+                return false;
+            }
+            nextSequence = sequence;
+        } else if (ahead >= slots.length) {
+            // The sender restarted or we lost a long run; start a new spurt from here.
+            clear();
+            nextSequence = sequence;
+        }
+        int slot = sequence % slots.length;
+        if (slots[slot] != null && slotSequences[slot] == sequence) {
+            duplicates++;
+            return false;
+        }
+        if (slots[slot] == null) {
+            count++;
+        }
+        slots[slot] = frame;
+        slotSequences[slot] = sequence;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Returns the frame due now, {@link #MISSING} to conceal, or null while
+     * filling or after a spurt has ended.
+     */
+    synchronized byte[] take() {
+        if (!playing) {
+            if (count < targetDepth) {
+                return null;
+            }
+            playing = true;
+            consecutiveMisses = 0;
+        }
+        if (count > targetDepth + 3) {
+            // Arrivals that bunched up behind a stall are trimmed so latency returns to the target.
+            targetDepth = jitterDepth();
+        }
+        while (count > targetDepth + 3) {
+            if (remove(nextSequence) != null) {
+                trimmed++;
+            }
+            nextSequence = (nextSequence + 1) & SEQUENCE_MASK;
+        }
+        byte[] frame = remove(nextSequence);
+        if (frame != null) {
+            nextSequence = (nextSequence + 1) & SEQUENCE_MASK;
+            consecutiveMisses = 0;
+            return frame;
+        }
+        if (count == 0) {
+            underruns++;
+            if (++consecutiveMisses > MAX_CONCEALED) {
+                endSpurt();
+                return null;
+            }
+            // Keep waiting for this frame: it is probably just late, and playing it adds a frame of depth.
+            targetDepth = Math.max(targetDepth, jitterDepth());
+            concealed++;
+            return MISSING;
+        }
+        lost++;
+        consecutiveMisses++;
+        nextSequence = (nextSequence + 1) & SEQUENCE_MASK;
+        concealed++;
+        return MISSING;
+    }
+
+    /** Blocks until a frame is queued or the timeout passes. */
+    synchronized void awaitFrame(long timeoutMillis) throws InterruptedException {
+        if (count == 0) {
+            wait(timeoutMillis);
+        }
+    }
+
+    /** Wakes a thread in {@link #awaitFrame} that has other work to do. */
+    synchronized void wake() {
+        notifyAll();
+    }
+
+    synchronized void clear() {
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = null;
+        }
+        count = 0;
+        endSpurt();
+        nextSequence = NO_SEQUENCE;
+    }
+
+    synchronized int depth() {
+        return count;
+    }
+
+    synchronized int targetDepth() {
+        return targetDepth;
+    }
+
+    synchronized double jitterMillis() {
+        return jitterMillis;
+    }
+
+    /** Playout delay currently held in the buffer. */
+    synchronized int latencyMillis() {
+        return (int) Math.round(count * frameMillis);
+    }
+
+    synchronized long received() {
+        return received;
+    }
+
+    synchronized long late() {
+        return late;
+    }
+
+    synchronized long duplicates() {
+        return duplicates;
+    }
+
+    synchronized long lost() {
+        return lost;
+    }
+
+    synchronized long underruns() {
+        return underruns;
+    }
+
+    synchronized long concealed() {
+        return concealed;
+    }
+
+    synchronized long trimmed() {
+        return trimmed;
+    }
+
+    private byte[] remove(int sequence) {
+        int slot = sequence % slots.length;
+        byte[] frame = slots[slot];
+        if (frame == null || slotSequences[slot] != sequence) {
+            return null;
+        }
+        slots[slot] = null;
+        count--;
+        return frame;
+    }
+
+    private void endSpurt() {
+        playing = false;
+        consecutiveMisses = 0;
+        targetDepth = jitterDepth();
+        if (count == 0) {
+            nextSequence = NO_SEQUENCE;
+            // The sender's silence between spurts would otherwise read as one huge transit jump.
+            lastTransit = Long.MIN_VALUE;
+        }
+    }
+
+    // Enough frames to ride out roughly two jitter deviations.
+    private int jitterDepth() {
+        int depth = (int) Math.ceil(2 * jitterMillis / frameMillis) + 1;
+        return Math.max(minDepth, Math.min(maxDepth, depth));
+    }
+
+    private void updateJitter(int sequence, long nowMillis) {
+        long transit = nowMillis - (long) (sequence * frameMillis);
+        if (lastTransit != Long.MIN_VALUE) {
+            long difference = Math.abs(transit - lastTransit);
+            // Sequence wrap or a new sender shows up as a huge jump; it is not jitter.
+            if (difference < 10_000) {
+                jitterMillis += (difference - jitterMillis) / 16;
+            }
+        }
+        lastTransit = transit;
+    }
+}
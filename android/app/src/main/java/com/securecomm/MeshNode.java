@@ -0,0 +1,190 @@
+package com.securecomm;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One node's mesh logic, independent of the radio: dedup and relay decisions,
+ * distance-vector routing from neighbour adverts, and unicast forwarding with
+ * a flood fallback. Link addresses are opaque strings supplied by the
+ * {@link MeshTransport}.
+ */
+final class MeshNode {
+
+    private final MeshTransport transport;
+    private final MeshRelay relay;
+    private final RoutingTable routingTable;
+    // Neighbour node ids are learned from the route adverts they send us directly.
+    private final Map<Integer, String> neighborAddresses = new ConcurrentHashMap<>();
+    private final Map<String, Integer> neighborNodes = new ConcurrentHashMap<>();
+    private final LongAdder advertsSent = new LongAdder();
+    private final LongAdder advertsReceived = new LongAdder();
+    private final LongAdder unicastForwards = new LongAdder();
+    private final LongAdder floodFallbacks = new LongAdder();
+
+    MeshNode(int localNodeId, SeenMessageSet seen, int maxRoutes, MeshTransport transport) {
+        this.transport = transport;
+        this.relay = new MeshRelay(localNodeId, seen);
+        this.routingTable = new RoutingTable(localNodeId, maxRoutes);
+    }
+
+    int localNodeId() {
+        return relay.localNodeId();
+    }
+
+    void setLocalNodeId(int nodeId) {
+        relay.setLocalNodeId(nodeId);
+        routingTable.setLocalNodeId(nodeId);
+    }
+
+    MeshRelay relay() {
+        return relay;
+    }
+
+    RoutingTable routingTable() {
+        return routingTable;
+    }
+
+    /**
+     * Handles a reassembled packet from a link. Route adverts are consumed
+     * here and packets for elsewhere are forwarded. Returns the relay decision
+     * so the caller can deliver the packet when {@link MeshRelay#DELIVER} is
+     * set. Only messages that arrived framed as mesh packets belong here.
+     */
+    int receive(String link, byte[] packet, long nowMillis) {
+        int decision = relay.onPacket(packet, nowMillis);
+        if (decision == MeshRelay.MALFORMED) {
+            return decision;
+        }
+        if ((MeshPacket.flags(packet) & MeshPacket.FLAG_ROUTE_ADVERT) != 0) {
+            if (decision != MeshRelay.DROP) {
+                handleRouteAdvert(link, packet, nowMillis);
+            }
+            return MeshRelay.DROP;
+        }
+        if ((decision & MeshRelay.FORWARD) != 0) {
+            forward(MeshPacket.forwardCopy(packet), link);
+        }
+        return decision;
+    }
+
+    /** Sends a locally originated packet; returns how many links took it. */
+    int send(byte[] packet, long nowMillis) {
+        relay.markOriginated(MeshPacket.messageId(packet), nowMillis);
+        return forward(packet, null);
+    }
+
+    /** Records a packet sent straight to a link so its echoes are dropped. */
+    void markOriginated(long messageId, long nowMillis) {
+        relay.markOriginated(messageId, nowMillis);
+    }
+
+    /** The neighbour's node id on a link, or {@link RoutingTable#NO_ROUTE} before its first advert. */
+    int neighborOn(String link) {
+        Integer neighbor = neighborNodes.get(link);
+        return neighbor != null ? neighbor : RoutingTable.NO_ROUTE;
+    }
+
+    /** The link towards a destination, or null without a route. */
+    String nextHopLink(int destination) {
+        int nextHop = routingTable.nextHop(destination);
+        return nextHop != RoutingTable.NO_ROUTE ? neighborAddresses.get(nextHop) : null;
+    }
+
+    int neighbors() {
+        return neighborNodes.size();
+    }
+
+    /** Introduces this node on a link that just came up rather than waiting for the next round. */
+    void linkUp(String link, long nowMillis) {
+        sendRouteAdvert(link, nowMillis);
+    }
+
+    void linkDown(String link, long nowMillis) {
+        Integer neighbor = neighborNodes.remove(link);
+        if (neighbor != null) {
+            neighborAddresses.remove(neighbor, link);
+            routingTable.linkDown(neighbor, nowMillis);
+        }
+    }
+
+    /** Ages out stale routes and adverts the table on every link. */
+    void advertRound(long nowMillis, long maxRouteAgeMillis) {
+        routingTable.expire(nowMillis, maxRouteAgeMillis);
+        routingTable.nextRound();
+        for (String link : transport.links()) {
+            sendRouteAdvert(link, nowMillis);
+        }
+    }
+
+    long advertsSent() {
+        return advertsSent.sum();
+    }
+
+    long advertsReceived() {
+        return advertsReceived.sum();
+    }
+
+    long unicastForwards() {
+        return unicastForwards.sum();
+    }
+
+    long floodFallbacks() {
+        return floodFallbacks.sum();
+    }
+
+    // Unicast follows the routing table when the next hop is one of our links; anything else is flooded.
+    private int forward(byte[] packet, String excludeLink) {
+        int destination = MeshPacket.destination(packet);
+        if (destination != MeshPacket.BROADCAST) {
+            String link = nextHopLink(destination);
+            if (link != null && !link.equals(excludeLink)
+                    && transport.send(link, packet, MeshPacket.trafficClass(packet))) {
+                unicastForwards.increment();
+                return 1;
+            }
+            floodFallbacks.increment();
+        }
+        return flood(packet, excludeLink);
+    }
+
+    // Sends to every link except the one the packet came from.
+    private int flood(byte[] packet, String excludeLink) {
+        int trafficClass = MeshPacket.trafficClass(packet);
+        int queued = 0;
+        for (String link : transport.links()) {
+            if (!link.equals(excludeLink) && transport.send(link, packet, trafficClass)) {
+                queued++;
+            }
+        }
+        return queued;
+    }
+
+    private void handleRouteAdvert(String link, byte[] packet, long nowMillis) {
+        // Adverts describe the sender's own table, so only first-hand copies are usable.
+        if (MeshPacket.hops(packet) != 0) {
+            return;
+        }
+        advertsReceived.increment();
+        int neighbor = MeshPacket.source(packet);
+        neighborAddresses.put(neighbor, link);
+        Integer previous = neighborNodes.put(link, neighbor);
+        routingTable.applyAdvert(neighbor, 1, packet, MeshPacket.HEADER_BYTES, nowMillis);
+        if (previous == null) {
+            sendRouteAdvert(link, nowMillis);
+        }
+    }
+
+    private void sendRouteAdvert(String link, long nowMillis) {
+        byte[] advert = routingTable.encodeAdvert(neighborOn(link));
+        long messageId = ThreadLocalRandom.current().nextLong();
+        int flags = MeshPacket.withTrafficClass(MeshPacket.FLAG_ROUTE_ADVERT, OutboundScheduler.CONTROL);
+        byte[] packet = MeshPacket.create(flags, 1, messageId, relay.localNodeId(), MeshPacket.BROADCAST, advert);
+        relay.markOriginated(messageId, nowMillis);
+        if (transport.send(link, packet, OutboundScheduler.CONTROL)) {
+            advertsSent.increment();
+        }
+    }
+}
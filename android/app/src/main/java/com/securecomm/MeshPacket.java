@@ -0,0 +1,130 @@
+package com.securecomm;
+
+/**
+ * Mesh packet header, read and written in place:
+ * {@code magic(1) | flags(1) | ttl(1) | hops(1) | messageId(8) | source(4) | destination(4) | payload}.
+ * Node ids are 32-bit integers; {@link #BROADCAST} addresses every node.
+ * Packets travel as {@link PacketFragmenter#KIND_MESH} messages; the magic
+ * byte only checks the header, it does not tell mesh traffic from direct.
+ */
+final class MeshPacket {
+
+    static final byte MAGIC = (byte) 0xA5;
+    static final int HEADER_BYTES = 20;
+    static final int BROADCAST = 0xFFFFFFFF;
+    static final int DEFAULT_TTL = 5;
+    /** Payload is a {@link RoutingTable} advert for direct neighbours only. */
+    static final int FLAG_ROUTE_ADVERT = 0x01;
+    /** Payload is a captured audio frame, encrypted when the link has a session key. */
+    static final int FLAG_AUDIO = 0x02;
+    /** Bits 4-6 hold the {@link OutboundScheduler} class plus one; zero means unclassed, sent as chat. */
+    static final int TRAFFIC_CLASS_MASK = 0x70;
+
+    private static final int TRAFFIC_CLASS_SHIFT = 4;
+
+    private static final int FLAGS = 1;
+    private static final int TTL = 2;
+    private static final int HOPS = 3;
+    private static final int MESSAGE_ID = 4;
+    private static final int SOURCE = 12;
+    private static final int DESTINATION = 16;
+
+    private MeshPacket() {
+    }
+
+    static boolean isMeshPacket(byte[] packet) {
+        return packet != null && packet.length >= HEADER_BYTES && packet[0] == MAGIC;
+    }
+
+    static byte[] create(int flags, int ttl, long messageId, int source, int destination, byte[] payload) {
+        byte[] packet = allocate(flags, ttl, messageId, source, destination, payload.length);
+        System.arraycopy(payload, 0, packet, HEADER_BYTES, payload.length);
+        return packet;
+    }
+
+    /** Writes the header and leaves {@code payloadLength} bytes at {@link #HEADER_BYTES} for the caller to fill. */
+    static byte[] allocate(int flags, int ttl, long messageId, int source, int destination, int payloadLength) {
+        byte[] packet = new byte[HEADER_BYTES + payloadLength];
+        packet[0] = MAGIC;
+        packet[FLAGS] = (byte) flags;
+        packet[TTL] = (byte) Math.min(ttl, 0xff);
+        packet[HOPS] = 0;
+        putLong(packet, MESSAGE_ID, messageId);
+        putInt(packet, SOURCE, source);
+        putInt(packet, DESTINATION, destination);
+        return packet;
+    }
+
+    static int flags(byte[] packet) {
+        return packet[FLAGS] & 0xff;
+    }
+
+    /** Returns {@code flags} with the traffic class field set to {@code trafficClass}. */
+    static int withTrafficClass(int flags, int trafficClass) {
+        return (flags & ~TRAFFIC_CLASS_MASK) | ((trafficClass + 1) << TRAFFIC_CLASS_SHIFT);
+    }
+
+    static int trafficClass(byte[] packet) {
+        int field = (flags(packet) & TRAFFIC_CLASS_MASK) >>> TRAFFIC_CLASS_SHIFT;
+        return field == 0 || field > OutboundScheduler.CLASS_COUNT ? OutboundScheduler.CHAT : field - 1;
+    }
+
+    static int ttl(byte[] packet) {
+        return packet[TTL] & 0xff;
+    }
+
+    static int hops(byte[] packet) {
+        return packet[HOPS] & 0xff;
+    }
+
+    static long messageId(byte[] packet) {
+        return getLong(packet, MESSAGE_ID);
+    }
+
+    static int source(byte[] packet) {
+        return getInt(packet, SOURCE);
+    }
+
+    static int destination(byte[] packet) {
+        return getInt(packet, DESTINATION);
+    }
+
+    static int payloadLength(byte[] packet) {
+        return packet.length - HEADER_BYTES;
+    }
+
+    static byte[] payload(byte[] packet) {
+        byte[] payload = new byte[payloadLength(packet)];
+        System.arraycopy(packet, HEADER_BYTES, payload, 0, payload.length);
+        return payload;
+    }
+
+    /** Returns a copy with the TTL decremented and the hop count incremented. */
+    static byte[] forwardCopy(byte[] packet) {
+        byte[] copy = packet.clone();
+        copy[TTL] = (byte) (ttl(packet) - 1);
+        copy[HOPS] = (byte) Math.min(hops(packet) + 1, 0xff);
+        return copy;
+    }
+
+    private static void putInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    private static void putLong(byte[] buffer, int offset, long value) {
+        putInt(buffer, offset, (int) (value >>> 32));
+        putInt(buffer, offset + 4, (int) value);
+    }
+
+    private static int getInt(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xff) << 24) | ((buffer[offset + 1] & 0xff) << 16)
+                | ((buffer[offset + 2] & 0xff) << 8) | (buffer[offset + 3] & 0xff);
+    }
+
+    private static long getLong(byte[] buffer, int offset) {
+        return ((long) getInt(buffer, offset) << 32) | (getInt(buffer, offset + 4) & 0xffffffffL);
+    }
+}
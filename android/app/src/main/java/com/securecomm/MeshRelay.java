@@ -0,0 +1,97 @@
+package com.securecomm;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides what happens to an incoming packet without leaving native code:
+ * whether it is a duplicate, whether this node should deliver it to JS, and
+ * whether it should be flooded on to the other peers.
+ */
+final class MeshRelay {
+
+    static final int DROP = 0;
+    static final int DELIVER = 1;
+    static final int FORWARD = 2;
+    /** Arrived framed as a mesh packet but is too short or lacks the header; dropped. */
+    static final int MALFORMED = 4;
+
+    private final SeenMessageSet seen;
+    private volatile int localNodeId;
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder malformed = new LongAdder();
+
+    MeshRelay(int localNodeId, SeenMessageSet seen) {
+        this.localNodeId = localNodeId;
+        this.seen = seen;
+    }
+
+    void setLocalNodeId(int nodeId) {
+        this.localNodeId = nodeId;
+    }
+
+    int localNodeId() {
+        return localNodeId;
+    }
+
+    /** Records a locally originated message so echoes from neighbours are dropped. */
+    void markOriginated(long messageId, long nowMillis) {
+        seen.add(messageId, nowMillis);
+    }
+
+    /** Returns a bit set of {@link #DELIVER} and {@link #FORWARD}, or {@link #DROP} / {@link #MALFORMED}. */
+    int onPacket(byte[] packet, long nowMillis) {
+        if (!MeshPacket.isMeshPacket(packet)) {
+            malformed.increment();
+            return MALFORMED;
+        }
+        received.increment();
+        if (!seen.add(MeshPacket.messageId(packet), nowMillis)) {
+            duplicates.increment();
+            return DROP;
+        }
+        int destination = MeshPacket.destination(packet);
+        int decision = DROP;
+        if (destination == localNodeId || destination == MeshPacket.BROADCAST) {
+            decision |= DELIVER;
+            delivered.increment();
+        }
+        if (destination != localNodeId) {
+            if (MeshPacket.ttl(packet) > 1) {
+                decision |= FORWARD;
+                forwarded.increment();
+            } else {
+                expired.increment();
+            }
+        }
+        return decision;
+    }
+
+    long received() {
+        return received.sum();
+    }
+
+    long duplicates() {
+        return duplicates.sum();
+    }
+
+    long delivered() {
+        return delivered.sum();
+    }
+
+    long forwarded() {
+        return forwarded.sum();
+    }
+
+    long expired() {
+        return expired.sum();
+    }
+
+    long malformed() {
+        return malformed.sum();
+    }
+}
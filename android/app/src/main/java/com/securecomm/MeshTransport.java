@@ -0,0 +1,17 @@
+package com.securecomm;
+
+/**
+ * The links a {@link MeshNode} can send on. The module implements it over
+ * GATT connections; the benchmarks implement it over an in-memory loopback.
+ */
+interface MeshTransport {
+
+    /** Addresses of the links that are currently up. */
+    Iterable<String> links();
+
+    /**
+     * Queues a whole packet for one link; framing into MTU-sized writes is the
+     * transport's job. Returns false if the link is not ready or refuses it.
+     */
+    boolean send(String link, byte[] packet, int trafficClass);
+}
@@ -0,0 +1,498 @@
+package com.securecomm;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Store-and-forward queue for messages whose peer is out of range. Messages
+ * are appended to fixed-size, memory-mapped segment files. A record is
+ * {@code length(4) | crc(4) | state(1) | class(1) | peerLength(1) | id(8) |
+ * createdAt(8) | peer | payload}, and the CRC covers everything after the
+ * state byte. Delivery flips the state byte in place. Only the per-peer index
+ * of record locations lives on the heap. Payloads are read from the map when a
+ * batch is leased for sending.
+ *
+ * <p>A segment is deleted once nothing in it is pending. Once less than a
+ * quarter of it is pending, its remaining records are copied forward and the
+ * file is deleted. On open, segments are scanned header by header; a torn or
+ * corrupt tail ends a segment's scan. Records survive process death through
+ * the page cache. {@link #flush()} forces them to storage.
+ */
+final class MessageOutbox implements Closeable {
+
+    static final int DEFAULT_SEGMENT_BYTES = 1 << 20;
+    static final int DEFAULT_MAX_SEGMENTS = 16;
+
+    private static final byte PENDING = 1;
+    private static final byte DONE = 2;
+    private static final int STATE = 8;
+    private static final int HEADER_BYTES = 27;
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+
+    static final class Entry {
+        final long id;
+        final int trafficClass;
+        final long createdAtMillis;
+        final byte[] payload;
+
+        Entry(long id, int trafficClass, long createdAtMillis, byte[] payload) {
+            this.id = id;
+            this.trafficClass = trafficClass;
+            this.createdAtMillis = createdAtMillis;
+            this.payload = payload;
+        }
+    }
+
+    private static final class Segment {
+        final long number;
+        final File file;
+        final FileChannel channel;
+        final MappedByteBuffer map;
+        int writeOffset;
+        int live;
+        int liveBytes;
+        int leased;
+
+        Segment(long number, File file, FileChannel channel, MappedByteBuffer map) {
+            this.number = number;
+            this.file = file;
+            this.channel = channel;
+            this.map = map;
+        }
+    }
+
+    // Heap index entry: where a pending record lives, not its payload.
+    private static final class Record {
+        final long id;
+        final String peer;
+        final int trafficClass;
+        final long createdAtMillis;
+        Segment segment;
+        int offset;
+        int length;
+        boolean leased;
+
+        Record(long id, String peer, int trafficClass, long createdAtMillis) {
+            this.id = id;
+            this.peer = peer;
+            this.trafficClass = trafficClass;
+            this.createdAtMillis = createdAtMillis;
+        }
+    }
+
+    private final File directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final Map<String, ArrayDeque<Record>> byPeer = new HashMap<>();
+    private final Map<Long, Record> byId = new HashMap<>();
+    private final CRC32 crc = new CRC32();
+    private Segment active;
+    private long nextId = 1;
+    private boolean closed;
+
+    private long appended;
+    private long delivered;
+    private long expired;
+    private long compactions;
+    private long pendingBytes;
+
+    MessageOutbox(File directory, int segmentBytes, int maxSegments) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        recover();
+    }
+
+    /** Stores a message and returns its id, or -1 when the outbox is full. */
+    synchronized long append(String peer, int trafficClass, byte[] payload, long nowMillis) throws IOException {
+        if (closed) {
+            throw new IOException("Outbox is closed");
+        }
+        byte[] peerBytes = peer.getBytes(StandardCharsets.US_ASCII);
+        int length = HEADER_BYTES + peerBytes.length + payload.length;
+        if (peerBytes.length > 0xff || length > segmentBytes) {
+            throw new IllegalArgumentException("Message too large for the outbox");
+        }
+        Record record = new Record(nextId, peer, trafficClass, nowMillis);
+        if (!write(record, peerBytes, payload, 0, payload.length)) {
+            return -1;
+        }
+        nextId++;
+        index(record);
+        appended++;
+        return record.id;
+    }
+
+    /**
+     * Hands out up to {@code max} of the peer's oldest pending messages that
+     * are not already out. Each must come back through {@link #acknowledge} or
+     * {@link #release}.
+     */
+    synchronized List<Entry> lease(String peer, int max) {
+        List<Entry> batch = new ArrayList<>();
+        ArrayDeque<Record> records = byPeer.get(peer);
+        if (records == null) {
+            return batch;
+        }
+        for (Record record : records) {
+            if (batch.size() >= max) {
+                break;
+            }
+            if (record.leased) {
+                continue;
+            }
+            int payloadOffset = record.offset + HEADER_BYTES + peerLength(record);
+            byte[] payload = new byte[record.offset + record.length - payloadOffset];
+            ByteBuffer view = record.segment.map.duplicate();
+            view.position(payloadOffset);
+            view.get(payload);
+            record.leased = true;
+            record.segment.leased++;
+            batch.add(new Entry(record.id, record.trafficClass, record.createdAtMillis, payload));
+        }
+        return batch;
+    }
+
+    /** Marks a leased message delivered and reclaims its segment if that leaves it mostly empty. */
+    synchronized boolean acknowledge(long id) throws IOException {
+        Record record = byId.get(id);
+        if (record == null) {
+            return false;
+        }
+        unlease(record);
+        retire(record);
+        delivered++;
+        reclaim(record.segment);
+        return true;
+    }
+
+    /** Returns a leased message to the queue after a failed send. */
+    synchronized void release(long id) {
+        Record record = byId.get(id);
+        if (record != null) {
+            unlease(record);
+        }
+    }
+
+    /** Drops messages older than {@code maxAgeMillis} that are not out for delivery. */
+    synchronized int expire(long nowMillis, long maxAgeMillis) throws IOException {
+        List<Record> old = new ArrayList<>();
+        for (Record record : byId.values()) {
+            if (!record.leased && nowMillis - record.createdAtMillis > maxAgeMillis) {
+                old.add(record);
+            }
+        }
+        for (Record record : old) {
+            retire(record);
+            expired++;
+        }
+        for (Record record : old) {
+            if (segments.containsKey(record.segment.number)) {
+                reclaim(record.segment);
+            }
+        }
+        return old.size();
+    }
+
+    /** Drops everything pending for a peer, or for every peer when {@code peer} is null. */
+    synchronized int discard(String peer) throws IOException {
+        List<Record> dropped = new ArrayList<>();
+        for (Record record : byId.values()) {
+            if (!record.leased && (peer == null || peer.equals(record.peer))) {
+                dropped.add(record);
+            }
+        }
+        for (Record record : dropped) {
+            retire(record);
+        }
+        for (Record record : dropped) {
+            if (segments.containsKey(record.segment.number)) {
+                reclaim(record.segment);
+            }
+        }
+        return dropped.size();
+    }
+
+    synchronized int pending() {
+        return byId.size();
+    }
+
+    synchronized int pending(String peer) {
+        ArrayDeque<Record> records = byPeer.get(peer);
+        return records != null ? records.size() : 0;
+    }
+
+    synchronized long pendingBytes() {
+        return pendingBytes;
+    }
+
+    synchronized int peers() {
+        return byPeer.size();
+    }
+
+    synchronized int segments() {
+        return segments.size();
+    }
+
+    synchronized long appended() {
+        return appended;
+    }
+
+    synchronized long delivered() {
+        return delivered;
+    }
+
+    synchronized long expired() {
+        return expired;
+    }
+
+    synchronized long compactions() {
+        return compactions;
+    }
+
+    /** Forces written records to storage. */
+    synchronized void flush() {
+        for (Segment segment : segments.values()) {
+            segment.map.force();
+        }
+    }
+
+    /**
+     * Forces and closes the segments and forgets the index, so late
+     * acknowledgements from sends already in flight change nothing on disk
+     * once another instance may have opened the same files.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        flush();
+        for (Segment segment : segments.values()) {
+            segment.channel.close();
+        }
+        segments.clear();
+        byId.clear();
+        byPeer.clear();
+        active = null;
+        pendingBytes = 0;
+    }
+
+    // Appends a record to the active segment, rolling to a new one when it is full.
+    private boolean write(Record record, byte[] peerBytes, byte[] payload, int offset, int length) throws IOException {
+        int recordLength = HEADER_BYTES + peerBytes.length + length;
+        Segment sealed = null;
+        if (active == null || active.writeOffset + recordLength > segmentBytes) {
+            if (segments.size() >= maxSegments) {
+                return false;
+            }
+            if (active != null) {
+                active.map.force();
+                sealed = active;
+            }
+            active = openSegment(segments.isEmpty() ? 0 : segments.lastKey() + 1);
+        }
+        Segment segment = active;
+        int start = segment.writeOffset;
+        ByteBuffer out = segment.map.duplicate();
+        out.position(start);
+        out.putInt(recordLength).putInt(0).put(PENDING).put((byte) record.trafficClass)
+                .put((byte) peerBytes.length).putLong(record.id).putLong(record.createdAtMillis)
+                .put(peerBytes).put(payload, offset, length);
+        segment.map.putInt(start + 4, checksum(segment.map, start, recordLength));
+        segment.writeOffset += recordLength;
+        segment.live++;
+        segment.liveBytes += recordLength;
+        record.segment = segment;
+        record.offset = start;
+        record.length = recordLength;
+        if (sealed != null) {
+            // Only now: compacting the sealed segment writes its survivors into the new one,
+            // and doing that first could leave too little room for this record.
+            reclaim(sealed);
+        }
+        return true;
+    }
+
+    private void index(Record record) {
+        byId.put(record.id, record);
+        byPeer.computeIfAbsent(record.peer, k -> new ArrayDeque<>()).add(record);
+        pendingBytes += record.length;
+    }
+
+    // Marks a record done on disk and drops it from the index.
+    private void retire(Record record) {
+        record.segment.map.put(record.offset + STATE, DONE);
+        record.segment.live--;
+        record.segment.liveBytes -= record.length;
+        byId.remove(record.id);
+        pendingBytes -= record.length;
+        ArrayDeque<Record> records = byPeer.get(record.peer);
+        if (records != null) {
+            records.remove(record);
+            if (records.isEmpty()) {
+                byPeer.remove(record.peer);
+            }
+        }
+    }
+
+    private void unlease(Record record) {
+        if (record.leased) {
+            record.leased = false;
+            record.segment.leased--;
+        }
+    }
+
+    /**
+     * Deletes a sealed segment with nothing pending, or copies the survivors
+     * of a mostly delivered one forward. Segments with messages out for
+     * delivery are left alone so leased ids keep their location.
+     */
+    private void reclaim(Segment segment) throws IOException {
+        if (segment == active || segment.leased > 0) {
+            return;
+        }
+        if (segment.live > 0) {
+            if (segment.liveBytes * 4 >= segmentBytes) {
+                return;
+            }
+            for (Record record : new ArrayList<>(byId.values())) {
+                if (record.segment != segment) {
+                    continue;
+                }
+                int payloadOffset = record.offset + HEADER_BYTES + peerLength(record);
+                byte[] peerBytes = record.peer.getBytes(StandardCharsets.US_ASCII);
+                byte[] payload = new byte[record.offset + record.length - payloadOffset];
+                ByteBuffer view = segment.map.duplicate();
+                view.position(payloadOffset);
+                view.get(payload);
+                Segment from = record.segment;
+                int fromOffset = record.offset;
+                if (!write(record, peerBytes, payload, 0, payload.length)) {
+                    // No room to move it yet; try again on a later acknowledgement.
+                    return;
+                }
+                // Recovery keeps the first copy of an id it sees, so retire the old copy now.
+                from.map.put(fromOffset + STATE, DONE);
+                from.live--;
+                from.liveBytes -= record.length;
+            }
+            compactions++;
+        }
+        segments.remove(segment.number);
+        segment.channel.close();
+        if (!segment.file.delete()) {
+            segment.file.deleteOnExit();
+        }
+    }
+
+    private int peerLength(Record record) {
+        return record.segment.map.get(record.offset + 10) & 0xff;
+    }
+
+    private int checksum(MappedByteBuffer map, int start, int length) {
+        ByteBuffer view = map.duplicate();
+        view.limit(start + length).position(start + STATE + 1);
+        crc.reset();
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    private Segment openSegment(long number) throws IOException {
+        File file = new File(directory, String.format("%s%08d%s", PREFIX, number, SUFFIX));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        FileChannel channel = raf.getChannel();
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        Segment segment = new Segment(number, file, channel, map);
+        segments.put(number, segment);
+        return segment;
+    }
+
+    // Rebuilds the index from the segment files, reading headers and checksums only.
+    private void recover() throws IOException {
+        File[] files = directory.listFiles();
+        TreeMap<Long, File> found = new TreeMap<>();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+                    try {
+                        found.put(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())), file);
+                    } catch (NumberFormatException e) {
+                        // Not one of ours.
+                    }
+                }
+            }
+        }
+        // One String per peer, not per record.
+        Map<String, String> peerNames = new HashMap<>();
+        for (long number : found.keySet()) {
+            Segment segment = openSegment(number);
+            MappedByteBuffer map = segment.map;
+            int offset = 0;
+            while (offset + HEADER_BYTES <= segmentBytes) {
+                int length = map.getInt(offset);
+                if (length < HEADER_BYTES || offset + length > segmentBytes
+                        || map.getInt(offset + 4) != checksum(map, offset, length)) {
+                    break;
+                }
+                long id = map.getLong(offset + 11);
+                nextId = Math.max(nextId, id + 1);
+                if (map.get(offset + STATE) == PENDING) {
+                    if (byId.containsKey(id)) {
+                        // A copy left behind by compaction interrupted mid-move.
+                        map.put(offset + STATE, DONE);
+                    } else {
+                        byte[] peerBytes = new byte[map.get(offset + 10) & 0xff];
+                        ByteBuffer view = map.duplicate();
+                        view.position(offset + HEADER_BYTES);
+                        view.get(peerBytes);
+                        String peer = peerNames.computeIfAbsent(
+                                new String(peerBytes, StandardCharsets.US_ASCII), k -> k);
+                        Record record = new Record(id, peer,
+                                map.get(offset + 9), map.getLong(offset + 19));
+                        record.segment = segment;
+                        record.offset = offset;
+                        record.length = length;
+                        segment.live++;
+                        segment.liveBytes += length;
+                        index(record);
+                    }
+                }
+                offset += length;
+            }
+            segment.writeOffset = offset;
+        }
+        // Compaction moves records behind newer ones, so disk order is not send order.
+        for (Map.Entry<String, ArrayDeque<Record>> peer : byPeer.entrySet()) {
+            List<Record> records = new ArrayList<>(peer.getValue());
+            records.sort((x, y) -> Long.compare(x.id, y.id));
+            peer.setValue(new ArrayDeque<>(records));
+        }
+        if (!segments.isEmpty()) {
+            active = segments.lastEntry().getValue();
+        }
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            reclaim(segment);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.securecomm;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide counters and latency histograms for the radio, crypto and
+ * audio hot paths, shared by all three modules. Counters are
+ * {@link LongAdder}s and histograms are fixed-bucket
+ * {@link LatencyHistogram}s, so recording never allocates. While disabled,
+ * every call is one volatile read, and timers skip {@link System#nanoTime()}.
+ */
+final class NativeMetrics {
+
+    static final NativeMetrics GLOBAL = new NativeMetrics();
+
+    static final int BLE_FRAGMENTS_SENT = 0;
+    static final int BLE_BYTES_SENT = 1;
+    static final int BLE_WRITE_FAILURES = 2;
+    static final int BLE_MESSAGES_SENT = 3;
+    static final int BLE_MESSAGES_FAILED = 4;
+    static final int BLE_FRAGMENTS_RECEIVED = 5;
+    static final int BLE_BYTES_RECEIVED = 6;
+    static final int BLE_PACKETS_RECEIVED = 7;
+    static final int CRYPTO_ENCRYPT_OPS = 8;
+    static final int CRYPTO_DECRYPT_OPS = 9;
+    static final int CRYPTO_FAILURES = 10;
+    static final int AUDIO_FRAMES_CAPTURED = 11;
+    static final int AUDIO_CAPTURE_OVERRUNS = 12;
+    static final int AUDIO_CAPTURE_ERRORS = 13;
+    static final int AUDIO_FRAMES_PLAYED = 14;
+    static final int AUDIO_PLAYBACK_UNDERRUNS = 15;
+    static final int COUNTER_COUNT = 16;
+
+    static final String[] COUNTER_NAMES = {
+            "ble.fragmentsSent", "ble.bytesSent", "ble.writeFailures", "ble.messagesSent", "ble.messagesFailed",
+            "ble.fragmentsReceived", "ble.bytesReceived", "ble.packetsReceived",
+            "crypto.encryptOps", "crypto.decryptOps", "crypto.failures",
+            "audio.framesCaptured", "audio.captureOverruns", "audio.captureErrors",
+            "audio.framesPlayed", "audio.playbackUnderruns"};
+
+    /** Time from handing a fragment to the stack until its write is acknowledged. */
+    static final int BLE_WRITE_RTT = 0;
+    static final int CRYPTO_ENCRYPT = 1;
+    static final int CRYPTO_DECRYPT = 2;
+    static final int HISTOGRAM_COUNT = 3;
+
+    static final String[] HISTOGRAM_NAMES = {"ble.writeRtt", "crypto.encrypt", "crypto.decrypt"};
+
+    /** Returned by {@link #startTimer()} while disabled; {@link #stopTimer} ignores it. */
+    static final long NOT_TIMED = Long.MIN_VALUE;
+
+    private final LongAdder[] counters = new LongAdder[COUNTER_COUNT];
+    private final LatencyHistogram[] histograms = new LatencyHistogram[HISTOGRAM_COUNT];
+    private volatile boolean enabled = true;
+
+    NativeMetrics() {
+        for (int i = 0; i < COUNTER_COUNT; i++) {
+            counters[i] = new LongAdder();
+        }
+        for (int i = 0; i < HISTOGRAM_COUNT; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    void increment(int counter) {
+        if (enabled) {
+            counters[counter].increment();
+        }
+    }
+
+    void add(int counter, long delta) {
+        if (enabled) {
+            counters[counter].add(delta);
+        }
+    }
+
+    void record(int histogram, long nanos) {
+        if (enabled) {
+            histograms[histogram].record(nanos);
+        }
+    }
+
+    long startTimer() {
+        return enabled ? System.nanoTime() : NOT_TIMED;
+    }
+
+    /** Records the time since {@code start} and counts one op. */
+    void stopTimer(int histogram, int counter, long start) {
+        if (start != NOT_TIMED && enabled) {
+            histograms[histogram].record(System.nanoTime() - start);
+            counters[counter].increment();
+        }
+    }
+
+    long counter(int counter) {
+        return counters[counter].sum();
+    }
+
+    LatencyHistogram histogram(int histogram) {
+        return histograms[histogram];
+    }
+
+    void reset() {
+        for (LongAdder counter : counters) {
+            counter.reset();
+        }
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    /** One line for logcat: non-zero counters, then count and p50/p99 in ms for each histogram used. */
+    String dump() {
+        StringBuilder line = new StringBuilder(256);
+        for (int i = 0; i < COUNTER_COUNT; i++) {
+            long value = counters[i].sum();
+            if (value != 0) {
+                line.append(COUNTER_NAMES[i]).append('=').append(value).append(' ');
+            }
+        }
+        for (int i = 0; i < HISTOGRAM_COUNT; i++) {
+            LatencyHistogram histogram = histograms[i];
+            if (histogram.count() != 0) {
+                line.append(String.format(Locale.US, "%s=%d/%.2f/%.2fms ", HISTOGRAM_NAMES[i], histogram.count(),
+                        histogram.percentileMillis(0.5), histogram.percentileMillis(0.99)));
+            }
+        }
+        return line.length() == 0 ? "idle" : line.substring(0, line.length() - 1);
+    }
+}
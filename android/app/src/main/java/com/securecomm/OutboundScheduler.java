@@ -0,0 +1,196 @@
+package com.securecomm;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-link outbound queues, one per traffic class. Emergency and control are
+ * served in strict priority. Voice, chat and bulk share what is left by
+ * deficit round robin on bytes, weighted 4:2:1. Each class is bounded and has
+ * its own drop policy: voice sheds its oldest frame, since a stale frame is
+ * worthless. Chat, bulk and control refuse new work, so callers see
+ * backpressure. Emergency is never dropped or refused.
+ *
+ * <p>Not thread-safe; {@link GattWriteQueue} calls it under its own lock.
+ */
+final class OutboundScheduler<T> {
+
+    static final int EMERGENCY = 0;
+    static final int CONTROL = 1;
+    static final int VOICE = 2;
+    static final int CHAT = 3;
+    static final int BULK = 4;
+    static final int CLASS_COUNT = 5;
+
+    static final String[] CLASS_NAMES = {"emergency", "control", "voice", "chat", "bulk"};
+
+    private static final int[] CAPACITY = {Integer.MAX_VALUE, 16, 8, 32, 64};
+    private static final int FIRST_WEIGHTED = VOICE;
+    private static final int[] QUANTUM_BYTES = {0, 0, 4 * 512, 2 * 512, 512};
+
+    /** Counters and queue-latency histograms shared by every link's scheduler. */
+    static final class Stats {
+        final LatencyHistogram[] queueLatency = new LatencyHistogram[CLASS_COUNT];
+        final LongAdder[] sent = new LongAdder[CLASS_COUNT];
+        final LongAdder[] dropped = new LongAdder[CLASS_COUNT];
+        final LongAdder[] rejected = new LongAdder[CLASS_COUNT];
+        final LongAdder[] preempted = new LongAdder[CLASS_COUNT];
+
+        Stats() {
+            for (int i = 0; i < CLASS_COUNT; i++) {
+                queueLatency[i] = new LatencyHistogram();
+                sent[i] = new LongAdder();
+                dropped[i] = new LongAdder();
+                rejected[i] = new LongAdder();
+                preempted[i] = new LongAdder();
+            }
+        }
+    }
+
+    private static final class Entry<T> {
+        final T item;
+        final int bytes;
+        final long enqueuedNanos;
+        // A preempted item goes back in the queue but was already timed and counted.
+        final boolean requeued;
+
+        Entry(T item, int bytes, long enqueuedNanos, boolean requeued) {
+            this.item = item;
+            this.bytes = bytes;
+            this.enqueuedNanos = enqueuedNanos;
+            this.requeued = requeued;
+        }
+    }
+
+    private final Stats stats;
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final ArrayDeque<Entry<T>>[] queues = new ArrayDeque[CLASS_COUNT];
+    private final int[] deficit = new int[CLASS_COUNT];
+    private int roundRobin = FIRST_WEIGHTED;
+    private boolean credited;
+    private int size;
+    private T evicted;
+
+    OutboundScheduler(Stats stats) {
+        this.stats = stats;
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            queues[i] = new ArrayDeque<>();
+        }
+    }
+
+    /** Returns the class for a name in {@link #CLASS_NAMES}, or -1. */
+    static int classForName(String name) {
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            if (CLASS_NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Queues an item, or returns false if its class is full and refuses new
+     * work. If accepting it pushed out an older item, {@link #takeEvicted()}
+     * returns that one.
+     */
+    boolean offer(int trafficClass, T item, int bytes, long nowNanos) {
+        ArrayDeque<Entry<T>> queue = queues[trafficClass];
+        if (queue.size() >= CAPACITY[trafficClass]) {
+            if (trafficClass != VOICE) {
+                stats.rejected[trafficClass].increment();
+                return false;
+            }
+            evicted = queue.poll().item;
+            size--;
+            stats.dropped[trafficClass].increment();
+        }
+        queue.add(new Entry<>(item, bytes, nowNanos, false));
+        size++;
+        return true;
+    }
+
+    T takeEvicted() {
+        T item = evicted;
+        evicted = null;
+        return item;
+    }
+
+    /** Removes the next item by class policy, recording how long it waited; null when empty. */
+    T poll(long nowNanos) {
+        if (size == 0) {
+            return null;
+        }
+        for (int c = 0; c < FIRST_WEIGHTED; c++) {
+            if (!queues[c].isEmpty()) {
+                return dispatch(c, queues[c].poll(), nowNanos);
+            }
+        }
+        while (true) {
+            ArrayDeque<Entry<T>> queue = queues[roundRobin];
+            if (queue.isEmpty()) {
+                deficit[roundRobin] = 0;
+                advance();
+                continue;
+            }
+            if (!credited) {
+                deficit[roundRobin] += QUANTUM_BYTES[roundRobin];
+                credited = true;
+            }
+            Entry<T> head = queue.peek();
+            if (head.bytes <= deficit[roundRobin]) {
+                deficit[roundRobin] -= head.bytes;
+                return dispatch(roundRobin, queue.poll(), nowNanos);
+            }
+            advance();
+        }
+    }
+
+    /** True when an emergency item is waiting, so a partly sent lower-class item should yield. */
+    boolean hasUrgent() {
+        return !queues[EMERGENCY].isEmpty();
+    }
+
+    /** Puts a preempted item back at the head of its class. */
+    void requeue(int trafficClass, T item, int bytes) {
+        queues[trafficClass].addFirst(new Entry<>(item, bytes, 0, true));
+        size++;
+        stats.preempted[trafficClass].increment();
+    }
+
+    int size() {
+        return size;
+    }
+
+    int size(int trafficClass) {
+        return queues[trafficClass].size();
+    }
+
+    /** Empties every queue and returns the items in class order. */
+    List<T> drain() {
+        List<T> items = new ArrayList<>(size);
+        for (ArrayDeque<Entry<T>> queue : queues) {
+            for (Entry<T> entry : queue) {
+                items.add(entry.item);
+            }
+            queue.clear();
+        }
+        size = 0;
+        return items;
+    }
+
+    private T dispatch(int trafficClass, Entry<T> entry, long nowNanos) {
+        size--;
+        if (!entry.requeued) {
+            stats.queueLatency[trafficClass].record(nowNanos - entry.enqueuedNanos);
+            stats.sent[trafficClass].increment();
+        }
+        return entry.item;
+    }
+
+    private void advance() {
+        credited = false;
+        roundRobin = roundRobin + 1 < CLASS_COUNT ? roundRobin + 1 : FIRST_WEIGHTED;
+    }
+}
@@ -0,0 +1,81 @@
+package com.securecomm;
+
+/**
+ * Splits payloads into MTU-sized GATT writes. Each fragment carries a 6-byte
+ * header {@code magic(1) | kind(1) | messageId(2) | index(1) | count(1)} so the
+ * receiver can put the message back together with {@link PacketReassembler}.
+ * The kind says whether the message is a {@link MeshPacket} or a direct
+ * payload, so mesh framing never has to be guessed from the payload bytes.
+ * Builds before this framing write each payload raw in a single write; a write
+ * that does not start with {@link #MAGIC} is one of those, a direct message.
+ */
+final class PacketFragmenter {
+
+    /** Marks version 1 of this framing. */
+    static final byte MAGIC = (byte) 0xF1;
+    static final int HEADER_BYTES = 6;
+
+    /** A payload for the peer on the other end of the link. */
+    static final int KIND_DIRECT = 0;
+    /** A {@link MeshPacket} for the receiver's mesh node. */
+    static final int KIND_MESH = 1;
+    static final int ATT_OVERHEAD = 3;
+    /** ATT caps an attribute value at 512 bytes whatever the MTU; some stacks truncate longer writes. */
+    static final int MAX_ATTRIBUTE_BYTES = 512;
+    static final int DEFAULT_MTU = 23;
+    static final int REQUESTED_MTU = 517;
+    static final int MAX_FRAGMENTS = 255;
+
+    private PacketFragmenter() {
+    }
+
+    static int maxFragmentPayload(int mtu) {
+        return Math.max(1, Math.min(mtu - ATT_OVERHEAD, MAX_ATTRIBUTE_BYTES) - HEADER_BYTES);
+    }
+
+    static int fragmentCount(int payloadLength, int mtu) {
+        int perFragment = maxFragmentPayload(mtu);
+        return Math.max(1, (payloadLength + perFragment - 1) / perFragment);
+    }
+
+    static int maxPayload(int mtu) {
+        return maxFragmentPayload(mtu) * MAX_FRAGMENTS;
+    }
+
+    static byte[] fragment(byte[] payload, int kind, int messageId, int index, int mtu) {
+        int perFragment = maxFragmentPayload(mtu);
+        int count = fragmentCount(payload.length, mtu);
+        int offset = index * perFragment;
+        int length = Math.min(perFragment, payload.length - offset);
+        byte[] fragment = new byte[HEADER_BYTES + length];
+        fragment[0] = MAGIC;
+        fragment[1] = (byte) kind;
+        fragment[2] = (byte) (messageId >>> 8);
+        fragment[3] = (byte) messageId;
+        fragment[4] = (byte) index;
+        fragment[5] = (byte) count;
+        System.arraycopy(payload, offset, fragment, HEADER_BYTES, length);
+        return fragment;
+    }
+
+    static boolean isFragment(byte[] write) {
+        return write.length >= HEADER_BYTES && write[0] == MAGIC;
+    }
+
+    /** The kind of message a write belongs to; unframed writes are direct. */
+    static int kind(byte[] write) {
+        return isFragment(write) ? write[1] & 0xff : KIND_DIRECT;
+    }
+
+    static int messageId(byte[] fragment) {
+        return ((fragment[2] & 0xff) << 8) | (fragment[3] & 0xff);
+    }
+
+    static int index(byte[] fragment) {
+        return fragment[4] & 0xff;
+    }
+
+    static int count(byte[] fragment) {
+        return fragment[5] & 0xff;
+    }
+}
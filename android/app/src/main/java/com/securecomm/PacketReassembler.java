@@ -0,0 +1,112 @@
+package com.securecomm;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Rebuilds messages from {@link PacketFragmenter} fragments, per source device.
+ * Partial messages are dropped after a timeout or when too many are open, so a
+ * peer that disappears mid-message cannot pin memory. Unframed writes from
+ * older builds are whole messages and pass straight through.
+ */
+final class PacketReassembler {
+
+    static final long DEFAULT_TIMEOUT_MILLIS = 10_000;
+    static final int DEFAULT_MAX_PARTIALS = 64;
+
+    private static final class Partial {
+        final byte[][] fragments;
+        int received;
+        int length;
+        long lastSeenMillis;
+
+        Partial(int count) {
+            this.fragments = new byte[count][];
+        }
+    }
+
+    private final long timeoutMillis;
+    private final int maxPartials;
+    private final Map<String, Partial> partials = new HashMap<>();
+    private long dropped;
+
+    PacketReassembler(long timeoutMillis, int maxPartials) {
+        this.timeoutMillis = timeoutMillis;
+        this.maxPartials = maxPartials;
+    }
+
+    /** Returns the complete message once its last missing fragment arrives, otherwise null. */
+    synchronized byte[] accept(String source, byte[] fragment, long nowMillis) {
+        if (fragment == null || fragment.length == 0) {
+            dropped++;
+            return null;
+        }
+        if (!PacketFragmenter.isFragment(fragment)) {
+            return fragment;
+        }
+        int kind = PacketFragmenter.kind(fragment);
+        int count = PacketFragmenter.count(fragment);
+        int index = PacketFragmenter.index(fragment);
+        if ((kind != PacketFragmenter.KIND_DIRECT && kind != PacketFragmenter.KIND_MESH) || count == 0 || index >= count) {
+            dropped++;
+            return null;
+        }
+        int bodyLength = fragment.length - PacketFragmenter.HEADER_BYTES;
+        if (count == 1) {
+            byte[] message = new byte[bodyLength];
+            System.arraycopy(fragment, PacketFragmenter.HEADER_BYTES, message, 0, bodyLength);
+            return message;
+        }
+
+        String key = source + '#' + PacketFragmenter.messageId(fragment);
+        Partial partial = partials.get(key);
+        if (partial == null || partial.fragments.length != count) {
+            expire(nowMillis);
+            if (partials.size() >= maxPartials) {
+                dropped++;
+                return null;
+            }
+            partial = new Partial(count);
+            partials.put(key, partial);
+        }
+        partial.lastSeenMillis = nowMillis;
+        if (partial.fragments[index] == null) {
+            partial.fragments[index] = fragment;
+            partial.received++;
+            partial.length += bodyLength;
+        }
+        if (partial.received < count) {
+            return null;
+        }
+
+        partials.remove(key);
+        byte[] message = new byte[partial.length];
+        int offset = 0;
+        for (byte[] part : partial.fragments) {
+            int length = part.length - PacketFragmenter.HEADER_BYTES;
+            System.arraycopy(part, PacketFragmenter.HEADER_BYTES, message, offset, length);
+            offset += length;
+        }
+        return message;
+    }
+
+    synchronized void expire(long nowMillis) {
+        Iterator<Partial> iterator = partials.values().iterator();
+        while (iterator.hasNext()) {
+            if (nowMillis - iterator.next().lastSeenMillis > timeoutMillis) {
+                iterator.remove();
+                dropped++;
+            }
+        }
+    }
+
+    synchronized void clear(String source) {
+        String prefix = source + '#';
+        partials.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    synchronized long dropped() {
+        return dropped;
+    }
+}
@@ -0,0 +1,55 @@
+package com.securecomm;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed set of direct, little-endian PCM buffers shared by the capture loop and
+ * its sinks. The steady state allocates nothing; if every buffer is out, a
+ * fresh one is created and counted so an undersized pool shows up in stats.
+ */
+final class PcmFramePool {
+
+    private final ArrayBlockingQueue<ByteBuffer> free;
+    private final int frameBytes;
+    private final LongAdder exhausted = new LongAdder();
+
+    PcmFramePool(int frames, int frameBytes) {
+        this.free = new ArrayBlockingQueue<>(frames);
+        this.frameBytes = frameBytes;
+        for (int i = 0; i < frames; i++) {
+            free.offer(allocate());
+        }
+    }
+
+    /** Returns a cleared buffer of {@link #frameBytes()} capacity. */
+    ByteBuffer acquire() {
+        ByteBuffer frame = free.poll();
+        if (frame == null) {
+            exhausted.increment();
+            return allocate();
+        }
+        frame.clear();
+        return frame;
+    }
+
+    void release(ByteBuffer frame) {
+        if (frame.capacity() == frameBytes) {
+            free.offer(frame);
+        }
+    }
+
+    int frameBytes() {
+        return frameBytes;
+    }
+
+    long exhausted() {
+        return exhausted.sum();
+    }
+
+    private ByteBuffer allocate() {
+        return ByteBuffer.allocateDirect(frameBytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,25 @@
+package com.securecomm;
+
+import java.nio.ByteBuffer;
+
+/** Level metering over 16-bit little-endian mono PCM, read in place. */
+final class PcmLevel {
+
+    private PcmLevel() {
+    }
+
+    /** RMS of the samples between position and limit, normalised to 0..1; leaves the buffer untouched. */
+    static double rms(ByteBuffer pcm) {
+        int start = pcm.position();
+        int end = start + (pcm.remaining() & ~1);
+        if (end == start) {
+            return 0;
+        }
+        double sum = 0;
+        for (int i = start; i < end; i += 2) {
+            int sample = (short) ((pcm.get(i + 1) << 8) | (pcm.get(i) & 0xff));
+            sum += sample * sample;
+        }
+        return Math.sqrt(sum / ((end - start) / 2)) / 32768.0;
+    }
+}
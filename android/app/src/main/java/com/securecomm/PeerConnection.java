@@ -0,0 +1,95 @@
+package com.securecomm;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Everything the module tracks for one outgoing GATT link: the handle, the
+ * characteristics resolved at service discovery, the write queue and the link
+ * state. Callbacks for the link run on {@link #executor}, one at a time.
+ */
+final class PeerConnection {
+
+    static final int STATE_CONNECTING = 0;
+    static final int STATE_CONNECTED = 1;
+    static final int STATE_READY = 2;
+    static final int STATE_DISCONNECTED = 3;
+
+    final String address;
+    final SerialExecutor executor;
+    final GattWriteQueue writeQueue;
+
+    private volatile BluetoothGatt gatt;
+    private volatile BluetoothGattCharacteristic txCharacteristic;
+    private volatile BluetoothGattCharacteristic txFastCharacteristic;
+    private volatile int state = STATE_CONNECTING;
+
+    PeerConnection(String address, Executor callbackPool, OutboundScheduler.Stats outboundStats) {
+        this.address = address;
+        this.executor = new SerialExecutor(callbackPool);
+        this.writeQueue = new GattWriteQueue(this::writeFragment, outboundStats);
+    }
+
+    void attach(BluetoothGatt gatt) {
+        this.gatt = gatt;
+    }
+
+    void onConnected(BluetoothGatt gatt) {
+        this.gatt = gatt;
+        this.state = STATE_CONNECTED;
+    }
+
+    /** Caches the TX characteristics; {@code txFast} is null for peers without fast mode. */
+    void onServicesResolved(BluetoothGattCharacteristic tx, BluetoothGattCharacteristic txFast) {
+        this.txCharacteristic = tx;
+        this.txFastCharacteristic = txFast;
+        this.state = STATE_READY;
+    }
+
+    void onDisconnected(String reason) {
+        this.state = STATE_DISCONNECTED;
+        this.txCharacteristic = null;
+        this.txFastCharacteristic = null;
+        writeQueue.clear(reason);
+    }
+
+    int state() {
+        return state;
+    }
+
+    boolean isConnected() {
+        int current = state;
+        return current == STATE_CONNECTED || current == STATE_READY;
+    }
+
+    boolean isReady() {
+        return state == STATE_READY;
+    }
+
+    BluetoothGatt gatt() {
+        return gatt;
+    }
+
+    boolean hasTxCharacteristic() {
+        return txCharacteristic != null;
+    }
+
+    boolean supportsFastMode() {
+        return txFastCharacteristic != null;
+    }
+
+    private boolean writeFragment(byte[] fragment, boolean withResponse) {
+        BluetoothGatt currentGatt = gatt;
+        BluetoothGattCharacteristic characteristic = withResponse ? txCharacteristic : txFastCharacteristic;
+        if (currentGatt == null || characteristic == null) {
+            return false;
+        }
+        characteristic.setWriteType(withResponse
+                ? BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT
+                : BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
+        characteristic.setValue(fragment);
+        return currentGatt.writeCharacteristic(characteristic);
+    }
+}
@@ -0,0 +1,158 @@
+package com.securecomm;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.crypto.KeyAgreement;
+
+/**
+ * Caches the outcome of an ECDH handshake per remote public key: the parsed
+ * {@link PublicKey}, the raw shared secret and an HKDF-derived AES-256 session
+ * key. Entries are keyed by the SHA-256 fingerprint of the encoded remote key,
+ * expire after a TTL and are evicted least-recently-used past the capacity.
+ */
+final class PeerSecretCache {
+
+    static final int DEFAULT_CAPACITY = 128;
+    static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private static final byte[] SESSION_INFO = "securecomm/session/v1".getBytes(StandardCharsets.US_ASCII);
+    private static final int SESSION_KEY_BYTES = 32;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    static final class Entry {
+        final String fingerprint;
+        final PublicKey publicKey;
+        final byte[] sharedSecret;
+        final String encodedSessionKey;
+        final long expiresAtNanos;
+
+        Entry(String fingerprint, PublicKey publicKey, byte[] sharedSecret, String encodedSessionKey, long expiresAtNanos) {
+            this.fingerprint = fingerprint;
+            this.publicKey = publicKey;
+            this.sharedSecret = sharedSecret;
+            this.encodedSessionKey = encodedSessionKey;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Entry> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    PeerSecretCache(final int capacity, long ttlMillis) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    static String fingerprint(byte[] encodedPublicKey) throws GeneralSecurityException {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(encodedPublicKey);
+        char[] chars = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            chars[i * 2] = HEX[(digest[i] >> 4) & 0x0f];
+            chars[i * 2 + 1] = HEX[digest[i] & 0x0f];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Returns the cached handshake result for {@code encodedRemoteKey}, running
+     * ECDH and HKDF against {@code localKeyPair} on a miss or after expiry.
+     */
+    Entry resolve(KeyPair localKeyPair, String encodedRemoteKey) throws GeneralSecurityException {
+        byte[] remoteKeyBytes = Base64.getDecoder().decode(encodedRemoteKey);
+        String fingerprint = fingerprint(remoteKeyBytes);
+        long now = System.nanoTime();
+        synchronized (this) {
+            Entry entry = entries.get(fingerprint);
+            if (entry != null && now - entry.expiresAtNanos < 0) {
+                hits.increment();
+                return entry;
+            }
+        }
+        misses.increment();
+        Entry entry = handshake(localKeyPair, fingerprint, remoteKeyBytes, now + ttlNanos);
+        synchronized (this) {
+            entries.put(fingerprint, entry);
+        }
+        return entry;
+    }
+
+    /** Runs ECDH and HKDF without touching the cache, for one-shot ephemeral keys. */
+    static Entry handshake(KeyPair localKeyPair, String encodedRemoteKey) throws GeneralSecurityException {
+        byte[] remoteKeyBytes = Base64.getDecoder().decode(encodedRemoteKey);
+        return handshake(localKeyPair, fingerprint(remoteKeyBytes), remoteKeyBytes, System.nanoTime());
+    }
+
+    private static Entry handshake(KeyPair localKeyPair, String fingerprint, byte[] remoteKeyBytes, long expiresAtNanos)
+            throws GeneralSecurityException {
+        PublicKey remotePublicKey = KeyFactory.getInstance("EC").generatePublic(new X509EncodedKeySpec(remoteKeyBytes));
+        KeyAgreement keyAgreement = KeyAgreement.getInstance("ECDH");
+        keyAgreement.init(localKeyPair.getPrivate());
+        keyAgreement.doPhase(remotePublicKey, true);
+        byte[] sharedSecret = keyAgreement.generateSecret();
+        byte[] info = sessionInfo(localKeyPair.getPublic().getEncoded(), remoteKeyBytes);
+        byte[] sessionKey = Hkdf.derive(null, sharedSecret, info, SESSION_KEY_BYTES);
+        return new Entry(fingerprint, remotePublicKey, sharedSecret,
+                Base64.getEncoder().encodeToString(sessionKey), expiresAtNanos);
+    }
+
+    // Binds both public keys in a fixed order so the two peers derive the same key.
+    private static byte[] sessionInfo(byte[] localKey, byte[] remoteKey) {
+        boolean localFirst = compare(localKey, remoteKey) <= 0;
+        byte[] first = localFirst ? localKey : remoteKey;
+        byte[] second = localFirst ? remoteKey : localKey;
+        byte[] info = new byte[SESSION_INFO.length + first.length + second.length];
+        System.arraycopy(SESSION_INFO, 0, info, 0, SESSION_INFO.length);
+        System.arraycopy(first, 0, info, SESSION_INFO.length, first.length);
+        System.arraycopy(second, 0, info, SESSION_INFO.length + first.length, second.length);
+        return info;
+    }
+
+    private static int compare(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int diff = (a[i] & 0xff) - (b[i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    synchronized boolean invalidate(String fingerprint) {
+        return entries.remove(fingerprint) != null;
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+}
@@ -0,0 +1,237 @@
+package com.securecomm;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Plays received voice frames on a dedicated writer thread. Producers only
+ * queue: sequenced frames into the {@link JitterBuffer}, unsequenced chunks
+ * into a plain FIFO that is played as soon as it has data and never drops
+ * anything, since chunks of arbitrary length cannot be paced as frames. The writer takes one frame at a time,
+ * decodes it and blocks in {@link Output#write}, so the output device sets the
+ * pace. A missing frame is concealed by replaying the last good one, then
+ * halving its gain on each further miss, so a gap fades out rather than clicks.
+ * Between talk spurts, {@link ComfortNoise} markers keep the track fed with
+ * noise at the sender's background level.
+ */
+final class PlaybackEngine {
+
+    interface Output {
+        /** Blocks until the device has accepted {@code length} samples. */
+        void write(short[] samples, int length);
+    }
+
+    private static final long IDLE_WAIT_MILLIS = 100;
+    // Markers arrive every 400 ms while the sender is silent; a few missed ones mean it has gone.
+    private static final long COMFORT_NOISE_TIMEOUT_MILLIS = 1_500;
+
+    private final JitterBuffer buffer;
+    private final VoiceDecoder decoder;
+    private final int outputRate;
+    private final Output output;
+    private final short[] silence;
+    private final short[] noise;
+    private final ConcurrentLinkedQueue<byte[]> chunks = new ConcurrentLinkedQueue<>();
+    private final LongAdder framesPlayed = new LongAdder();
+    private final LongAdder framesRejected = new LongAdder();
+    private final LongAdder comfortNoiseFrames = new LongAdder();
+    private final ComfortNoise comfortNoise = new ComfortNoise();
+    private volatile double comfortLevel;
+    private volatile long comfortUntil;
+
+    private short[] pcm = new short[0];
+    private short[] lastFrame = new short[0];
+    private short[] concealment = new short[0];
+    private int lastLength;
+    private int concealedInRow;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    /** {@code decoder} is null when frames are raw little-endian PCM at the output rate. */
+    PlaybackEngine(JitterBuffer buffer, VoiceDecoder decoder, int outputRate, Output output) {
+        this.buffer = buffer;
+        this.decoder = decoder;
+        this.outputRate = outputRate;
+        this.output = output;
+        this.silence = new short[outputRate * VoiceCodec.FRAME_MILLIS / 1000];
+        this.noise = new short[silence.length];
+    }
+
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::writeLoop, "audio-playback");
+        writer.setDaemon(true);
+        writer.setPriority(Thread.MAX_PRIORITY);
+        writer.start();
+    }
+
+    /** Stops the writer and waits briefly for it to leave the output. */
+    synchronized void stop() {
+        running = false;
+        if (writer == null) {
+            return;
+        }
+        writer.interrupt();
+        try {
+            writer.join(500);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+        buffer.clear();
+        chunks.clear();
+    }
+
+    /** Queues a sequenced frame; never blocks. */
+    boolean offer(int sequence, byte[] frame) {
+        if (acceptMarker(frame)) {
+            return true;
+        }
+        if (decoder == null) {
+            // A raw PCM frame is a whole capture buffer, whose length depends on the sender's device.
+            buffer.setFrameMillis(frame.length / 2 * 1000.0 / outputRate);
+        }
+        return buffer.offer(sequence, frame, System.currentTimeMillis());
+    }
+
+    /** Queues a chunk that carries no sequence number; it plays in arrival order, ahead of buffered frames. */
+    boolean offerInOrder(byte[] chunk) {
+        if (acceptMarker(chunk)) {
+            return true;
+        }
+        chunks.add(chunk);
+        buffer.wake();
+        return true;
+    }
+
+    JitterBuffer buffer() {
+        return buffer;
+    }
+
+    long framesPlayed() {
+        return framesPlayed.sum();
+    }
+
+    long framesRejected() {
+        return framesRejected.sum();
+    }
+
+    long comfortNoiseFrames() {
+        return comfortNoiseFrames.sum();
+    }
+
+    private boolean acceptMarker(byte[] frame) {
+        if (!ComfortNoise.isMarker(frame)) {
+            return false;
+        }
+        comfortLevel = ComfortNoise.level(frame);
+        comfortUntil = System.currentTimeMillis() + COMFORT_NOISE_TIMEOUT_MILLIS;
+        return true;
+    }
+
+    private void writeLoop() {
+        long underrunsReported = buffer.underruns();
+        while (running) {
+            byte[] chunk = chunks.poll();
+            if (chunk != null) {
+                play(chunk);
+                continue;
+            }
+            byte[] frame = buffer.take();
+            if (frame == null || frame == JitterBuffer.MISSING) {
+                // MISSING also covers frames that were lost outright; only an empty buffer is an underrun.
+                long underruns = buffer.underruns();
+                NativeMetrics.GLOBAL.add(NativeMetrics.AUDIO_PLAYBACK_UNDERRUNS, underruns - underrunsReported);
+                underrunsReported = underruns;
+            }
+            if (frame == null) {
+                if (System.currentTimeMillis() < comfortUntil) {
+                    comfortNoise.fill(noise, noise.length, comfortLevel);
+                    comfortNoiseFrames.increment();
+                    output.write(noise, noise.length);
+                    continue;
+                }
+                try {
+                    buffer.awaitFrame(IDLE_WAIT_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+            if (frame == JitterBuffer.MISSING) {
+                conceal();
+                continue;
+            }
+            if (!play(frame)) {
+                conceal();
+            }
+        }
+    }
+
+    private boolean play(byte[] frame) {
+        int length = decode(frame);
+        if (length < 0) {
+            framesRejected.increment();
+            return false;
+        }
+        remember(length);
+        concealedInRow = 0;
+        comfortUntil = 0;
+        framesPlayed.increment();
+        NativeMetrics.GLOBAL.increment(NativeMetrics.AUDIO_FRAMES_PLAYED);
+        output.write(pcm, length);
+        return true;
+    }
+
+    // Leaves the samples in pcm and returns how many, or -1 for an unknown codec.
+    private int decode(byte[] frame) {
+        if (decoder != null) {
+            int length = decoder.decode(frame, 0, frame.length);
+            if (length > 0) {
+                ensurePcm(length);
+                System.arraycopy(decoder.samples(), 0, pcm, 0, length);
+            }
+            return length;
+        }
+        int length = frame.length / 2;
+        ensurePcm(length);
+        for (int i = 0; i < length; i++) {
+            pcm[i] = (short) ((frame[2 * i] & 0xff) | (frame[2 * i + 1] << 8));
+        }
+        return length;
+    }
+
+    private void conceal() {
+        if (lastLength == 0 || concealedInRow >= JitterBuffer.MAX_CONCEALED) {
+            output.write(silence, silence.length);
+            return;
+        }
+        concealedInRow++;
+        if (concealment.length < lastLength) {
+            concealment = new short[lastFrame.length];
+        }
+        int shift = concealedInRow - 1;
+        for (int i = 0; i < lastLength; i++) {
+            concealment[i] = (short) (lastFrame[i] >> shift);
+        }
+        output.write(concealment, lastLength);
+    }
+
+    private void remember(int length) {
+        if (lastFrame.length < length) {
+            lastFrame = new short[pcm.length];
+        }
+        System.arraycopy(pcm, 0, lastFrame, 0, length);
+        lastLength = length;
+    }
+
+    private void ensurePcm(int length) {
+        if (pcm.length < length) {
+            pcm = new short[Math.max(length, pcm.length * 2)];
+        }
+    }
+}
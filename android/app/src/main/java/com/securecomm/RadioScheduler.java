@@ -0,0 +1,217 @@
+package com.securecomm;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Chooses the scan/advertise profile and drives the scan duty cycle. Emergency
+ * is only entered on request. Otherwise a node that has sent or received
+ * traffic within {@link #ACTIVE_HOLD_MILLIS} runs the active profile, and a
+ * quiet node drops to idle. Callers pass the clock in and apply the returned
+ * changes to the radio, so this class never touches Bluetooth itself.
+ */
+final class RadioScheduler {
+
+    static final int LEVEL_LOW = 0;
+    static final int LEVEL_MEDIUM = 1;
+    static final int LEVEL_HIGH = 2;
+
+    static final int PROFILE_CHANGED = 1;
+    static final int SCAN_TOGGLED = 2;
+
+    static final String MODE_AUTO = "auto";
+    static final long ACTIVE_HOLD_MILLIS = 60_000;
+
+    static final class Profile {
+        final String name;
+        final int scanLevel;
+        final int advertiseLevel;
+        final long scanOnMillis;
+        // Zero scans continuously.
+        final long scanOffMillis;
+        final long reportDelayMillis;
+
+        Profile(String name, int scanLevel, int advertiseLevel, long scanOnMillis, long scanOffMillis,
+                long reportDelayMillis) {
+            this.name = name;
+            this.scanLevel = scanLevel;
+            this.advertiseLevel = advertiseLevel;
+            this.scanOnMillis = scanOnMillis;
+            this.scanOffMillis = scanOffMillis;
+            this.reportDelayMillis = reportDelayMillis;
+        }
+
+        boolean continuous() {
+            return scanOffMillis == 0;
+        }
+    }
+
+    // Duty cycles stay under the platform limit of five scan starts per 30 seconds.
+    static final Profile EMERGENCY = new Profile("emergency", LEVEL_HIGH, LEVEL_HIGH, 0, 0, 0);
+    static final Profile ACTIVE = new Profile("active", LEVEL_MEDIUM, LEVEL_MEDIUM, 6_000, 2_000, 1_000);
+    static final Profile IDLE = new Profile("idle", LEVEL_LOW, LEVEL_LOW, 3_000, 27_000, 5_000);
+
+    private static final long MIN_TICK_MILLIS = 50;
+
+    private Profile pinned;
+    private Profile current = IDLE;
+    private long lastTrafficMillis = Long.MIN_VALUE / 2;
+    private boolean scanRequested;
+    private boolean scanOn;
+    private long phaseStartMillis;
+    private long scanOnSinceMillis;
+    private long scanOnTotalMillis;
+    private boolean advertising;
+    private long advertiseOnSinceMillis;
+    private long advertiseOnTotalMillis;
+    private long profileSwitches;
+
+    private final LongAdder callbacks = new LongAdder();
+    private final LongAdder results = new LongAdder();
+    private final long statsSinceMillis;
+
+    RadioScheduler(long nowMillis) {
+        this.statsSinceMillis = nowMillis;
+    }
+
+    /** Accepts {@link #MODE_AUTO} or a profile name; returns false for anything else. */
+    synchronized boolean setMode(String mode) {
+        if (MODE_AUTO.equals(mode)) {
+            pinned = null;
+        } else if (EMERGENCY.name.equals(mode)) {
+            pinned = EMERGENCY;
+        } else if (ACTIVE.name.equals(mode)) {
+            pinned = ACTIVE;
+        } else if (IDLE.name.equals(mode)) {
+            pinned = IDLE;
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    synchronized String mode() {
+        return pinned != null ? pinned.name : MODE_AUTO;
+    }
+
+    /** Returns true when the traffic should move the radio to a different profile right away. */
+    synchronized boolean recordTraffic(long nowMillis) {
+        lastTrafficMillis = nowMillis;
+        return desired(nowMillis) != current;
+    }
+
+    void recordCallback(int resultCount) {
+        callbacks.increment();
+        results.add(resultCount);
+    }
+
+    synchronized void setScanning(boolean requested, long nowMillis) {
+        scanRequested = requested;
+        phaseStartMillis = nowMillis;
+        setScanOn(requested, nowMillis);
+    }
+
+    synchronized void setAdvertising(boolean enabled, long nowMillis) {
+        if (enabled == advertising) {
+            return;
+        }
+        if (enabled) {
+            advertiseOnSinceMillis = nowMillis;
+        } else {
+            advertiseOnTotalMillis += nowMillis - advertiseOnSinceMillis;
+        }
+        advertising = enabled;
+    }
+
+    /** Advances the policy to {@code nowMillis} and returns a mask of what the radio must change. */
+    synchronized int tick(long nowMillis) {
+        Profile next = desired(nowMillis);
+        if (next != current) {
+            current = next;
+            profileSwitches++;
+            if (scanRequested) {
+                phaseStartMillis = nowMillis;
+                setScanOn(true, nowMillis);
+            }
+            return PROFILE_CHANGED;
+        }
+        if (!scanRequested || current.continuous()) {
+            return 0;
+        }
+        long phase = scanOn ? current.scanOnMillis : current.scanOffMillis;
+        if (nowMillis - phaseStartMillis < phase) {
+            return 0;
+        }
+        phaseStartMillis = nowMillis;
+        setScanOn(!scanOn, nowMillis);
+        return SCAN_TOGGLED;
+    }
+
+    /** Milliseconds until {@link #tick} has something to do, or -1 if nothing is pending. */
+    synchronized long delayUntilNextTick(long nowMillis) {
+        long delay = Long.MAX_VALUE;
+        if (scanRequested && !current.continuous()) {
+            long phase = scanOn ? current.scanOnMillis : current.scanOffMillis;
+            delay = phaseStartMillis + phase - nowMillis;
+        }
+        if (pinned == null && current == ACTIVE) {
+            delay = Math.min(delay, lastTrafficMillis + ACTIVE_HOLD_MILLIS - nowMillis);
+        }
+        return delay == Long.MAX_VALUE ? -1 : Math.max(delay, MIN_TICK_MILLIS);
+    }
+
+    synchronized Profile profile() {
+        return current;
+    }
+
+    synchronized boolean scanOn() {
+        return scanOn;
+    }
+
+    synchronized boolean advertising() {
+        return advertising;
+    }
+
+    synchronized long scanOnMillis(long nowMillis) {
+        return scanOnTotalMillis + (scanOn ? nowMillis - scanOnSinceMillis : 0);
+    }
+
+    synchronized long advertiseOnMillis(long nowMillis) {
+        return advertiseOnTotalMillis + (advertising ? nowMillis - advertiseOnSinceMillis : 0);
+    }
+
+    synchronized long profileSwitches() {
+        return profileSwitches;
+    }
+
+    long callbacks() {
+        return callbacks.sum();
+    }
+
+    long results() {
+        return results.sum();
+    }
+
+    double callbacksPerSecond(long nowMillis) {
+        long elapsed = nowMillis - statsSinceMillis;
+        return elapsed > 0 ? callbacks.sum() * 1000.0 / elapsed : 0;
+    }
+
+    private Profile desired(long nowMillis) {
+        if (pinned != null) {
+            return pinned;
+        }
+        return nowMillis - lastTrafficMillis < ACTIVE_HOLD_MILLIS ? ACTIVE : IDLE;
+    }
+
+    private void setScanOn(boolean on, long nowMillis) {
+        if (on == scanOn) {
+            return;
+        }
+        if (on) {
+            scanOnSinceMillis = nowMillis;
+        } else {
+            scanOnTotalMillis += nowMillis - scanOnSinceMillis;
+        }
+        scanOn = on;
+    }
+}
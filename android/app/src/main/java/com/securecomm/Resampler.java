@@ -0,0 +1,112 @@
+package com.securecomm;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Streaming sample-rate converter for 16-bit mono voice: linear interpolation
+ * behind a fourth-order Butterworth low-pass at 0.45 of the lower rate. The
+ * filter runs before interpolation when downsampling and after it when
+ * upsampling, so it always works at the higher rate. State carries across
+ * calls, so buffers of any size can be fed in sequence.
+ */
+final class Resampler {
+
+    private final double step;
+    private final boolean downsampling;
+    private final Biquad first;
+    private final Biquad second;
+    private double phase;
+    private double previous;
+
+    Resampler(int inputRate, int outputRate) {
+        this.step = (double) inputRate / outputRate;
+        this.downsampling = inputRate > outputRate;
+        int filterRate = Math.max(inputRate, outputRate);
+        double cutoff = 0.45 * Math.min(inputRate, outputRate);
+        this.first = new Biquad(cutoff, filterRate, 0.5411961);
+        this.second = new Biquad(cutoff, filterRate, 1.3065630);
+    }
+
+    /** Upper bound on the samples {@link #process} produces for {@code inputSamples}. */
+    int maxOutput(int inputSamples) {
+        return (int) Math.ceil(inputSamples / step) + 2;
+    }
+
+    /** Converts the 16-bit little-endian samples between position and limit without moving either. */
+    int processLittleEndian(ByteBuffer pcm, short[] out, int outOffset) {
+        int produced = outOffset;
+        int end = pcm.position() + (pcm.remaining() & ~1);
+        for (int i = pcm.position(); i < end; i += 2) {
+            double sample = (short) ((pcm.get(i + 1) << 8) | (pcm.get(i) & 0xff));
+            produced = push(sample, out, produced);
+        }
+        return produced - outOffset;
+    }
+
+    int process(short[] in, int offset, int length, short[] out, int outOffset) {
+        int produced = outOffset;
+        for (int i = offset; i < offset + length; i++) {
+            produced = push(in[i], out, produced);
+        }
+        return produced - outOffset;
+    }
+
+    private int push(double sample, short[] out, int produced) {
+        double current = downsampling ? second.filter(first.filter(sample)) : sample;
+        while (phase <= 1.0) {
+            double value = previous + (current - previous) * phase;
+            if (!downsampling) {
+                value = second.filter(first.filter(value));
+            }
+            out[produced++] = clamp(value);
+            phase += step;
+        }
+        phase -= 1.0;
+        previous = current;
+        return produced;
+    }
+
+    private static short clamp(double value) {
+        if (value > Short.MAX_VALUE) {
+            return Short.MAX_VALUE;
+        }
+        if (value < Short.MIN_VALUE) {
+            return Short.MIN_VALUE;
+        }
+        return (short) Math.round(value);
+    }
+
+    // RBJ cookbook low-pass section, direct form I.
+    private static final class Biquad {
+        private final double b0;
+        private final double b1;
+        private final double b2;
+        private final double a1;
+        private final double a2;
+        private double x1;
+        private double x2;
+        private double y1;
+        private double y2;
+
+        Biquad(double cutoff, double sampleRate, double q) {
+            double w0 = 2 * Math.PI * cutoff / sampleRate;
+            double alpha = Math.sin(w0) / (2 * q);
+            double cos = Math.cos(w0);
+            double a0 = 1 + alpha;
+            b0 = (1 - cos) / 2 / a0;
+            b1 = (1 - cos) / a0;
+            b2 = b0;
+            a1 = -2 * cos / a0;
+            a2 = (1 - alpha) / a0;
+        }
+
+        double filter(double x) {
+            double y = b0 * x + b1 * x1 + b2 * x2 - a1 * y1 - a2 * y2;
+            x2 = x1;
+            x1 = x;
+            y2 = y1;
+            y1 = y;
+            return y;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.securecomm;
+
+/**
+ * Distance-vector routing table keyed by 32-bit node id. Routes live in
+ * parallel primitive arrays behind an open-addressed index, so a next-hop
+ * lookup is a single hash probe and updates never allocate. Every node stamps
+ * its own entry with a sequence number it alone advances; a route is replaced
+ * by a fresher sequence, or by a cheaper path at the same sequence, which keeps
+ * the table loop-free when links break (DSDV).
+ *
+ * <p>Advert layout: {@code count(2) | count x (node(4) | sequence(2) | cost(1))}.
+ */
+final class RoutingTable {
+
+    static final int NO_ROUTE = 0;
+    static final int INFINITY = 0xff;
+    static final int ENTRY_BYTES = 7;
+
+    private static final int EMPTY = 0;
+
+    private final int[] probe = new int[1];
+    private int[] nodes;
+    private int[] nextHops;
+    private int[] costs;
+    private int[] sequences;
+    private long[] updatedAt;
+    private int mask;
+    private int size;
+
+    private int localNodeId;
+    private int localSequence;
+
+    RoutingTable(int localNodeId, int initialCapacity) {
+        this.localNodeId = localNodeId;
+        allocate(Integer.highestOneBit(Math.max(16, initialCapacity * 2 - 1)));
+    }
+
+    synchronized void setLocalNodeId(int nodeId) {
+        if (nodeId != localNodeId) {
+            remove(nodeId);
+            localNodeId = nodeId;
+        }
+    }
+
+    /** Returns the neighbour to send through, or {@link #NO_ROUTE}. */
+    synchronized int nextHop(int destination) {
+        int slot = find(destination);
+        return slot >= 0 && costs[slot] < INFINITY ? nextHops[slot] : NO_ROUTE;
+    }
+
+    synchronized int cost(int destination) {
+        int slot = find(destination);
+        return slot >= 0 ? costs[slot] : INFINITY;
+    }
+
+    /** Installs or refreshes the direct route to a neighbour. */
+    synchronized boolean linkUp(int neighbor, int linkCost, long nowMillis) {
+        if (neighbor == localNodeId || neighbor == NO_ROUTE) {
+            return false;
+        }
+        int slot = findOrInsert(neighbor);
+        if (nextHops[slot] != neighbor && costs[slot] <= linkCost) {
+            // An equal or cheaper path through another neighbour is already known.
+            return false;
+        }
+        boolean changed = nextHops[slot] != neighbor || costs[slot] != linkCost;
+        nextHops[slot] = neighbor;
+        costs[slot] = linkCost;
+        updatedAt[slot] = nowMillis;
+        return changed;
+    }
+
+    /** Marks every route through {@code neighbor} unreachable and returns how many there were. */
+    synchronized int linkDown(int neighbor, long nowMillis) {
+        int broken = 0;
+        for (int slot = 0; slot <= mask; slot++) {
+            if (nodes[slot] != EMPTY && nextHops[slot] == neighbor && costs[slot] < INFINITY) {
+                costs[slot] = INFINITY;
+                // An odd step marks the break so it outranks the last good advert.
+                sequences[slot] = (sequences[slot] + 1) & 0xffff;
+                updatedAt[slot] = nowMillis;
+                broken++;
+            }
+        }
+        return broken;
+    }
+
+    /**
+     * Merges an advert heard directly from {@code neighbor}, whose own entry
+     * doubles as the direct route; returns the number of routes that changed.
+     */
+    synchronized int applyAdvert(int neighbor, int linkCost, byte[] advert, int offset, long nowMillis) {
+        int count = ((advert[offset] & 0xff) << 8) | (advert[offset + 1] & 0xff);
+        int end = Math.min(advert.length, offset + 2 + count * ENTRY_BYTES);
+        int changed = 0;
+        for (int p = offset + 2; p + ENTRY_BYTES <= end; p += ENTRY_BYTES) {
+            int node = ((advert[p] & 0xff) << 24) | ((advert[p + 1] & 0xff) << 16)
+                    | ((advert[p + 2] & 0xff) << 8) | (advert[p + 3] & 0xff);
+            int sequence = ((advert[p + 4] & 0xff) << 8) | (advert[p + 5] & 0xff);
+            int cost = Math.min(INFINITY, (advert[p + 6] & 0xff) + linkCost);
+            if (node == localNodeId || node == NO_ROUTE) {
+                continue;
+            }
+            int slot = find(node);
+            if (slot < 0) {
+                if (cost >= INFINITY) {
+                    continue;
+                }
+                slot = findOrInsert(node);
+            } else {
+                int age = (short) (sequence - sequences[slot]);
+                boolean better = age > 0 || (age == 0 && cost < costs[slot]);
+                boolean sameNextHop = nextHops[slot] == neighbor && age >= 0;
+                if (!better && !sameNextHop) {
+                    continue;
+                }
+                if (sameNextHop && !better && cost == costs[slot]) {
+                    updatedAt[slot] = nowMillis;
+                    continue;
+                }
+            }
+            nextHops[slot] = neighbor;
+            costs[slot] = cost;
+            sequences[slot] = sequence;
+            updatedAt[slot] = nowMillis;
+            changed++;
+        }
+        return changed;
+    }
+
+    /** Starts a new advert round; call once per period, before encoding adverts for each neighbour. */
+    synchronized void nextRound() {
+        localSequence = (localSequence + 2) & 0xffff;
+    }
+
+    /**
+     * Encodes this node's view for one neighbour. Routes learned through that
+     * neighbour are advertised as unreachable (split horizon with poisoned
+     * reverse) so two nodes never count a broken route up between them.
+     */
+    synchronized byte[] encodeAdvert(int neighbor) {
+        int count = 1;
+        for (int slot = 0; slot <= mask; slot++) {
+            if (nodes[slot] != EMPTY) {
+                count++;
+            }
+        }
+        count = Math.min(count, 0xffff);
+        byte[] advert = new byte[2 + count * ENTRY_BYTES];
+        advert[0] = (byte) (count >>> 8);
+        advert[1] = (byte) count;
+        int p = putEntry(advert, 2, localNodeId, localSequence, 0);
+        for (int slot = 0; slot <= mask && p < advert.length; slot++) {
+            if (nodes[slot] == EMPTY) {
+                continue;
+            }
+            int cost = nextHops[slot] == neighbor ? INFINITY : costs[slot];
+            p = putEntry(advert, p, nodes[slot], sequences[slot], cost);
+        }
+        return advert;
+    }
+
+    /** Drops routes that have not been refreshed for {@code maxAgeMillis}. */
+    synchronized int expire(long nowMillis, long maxAgeMillis) {
+        int removed = 0;
+        for (int slot = 0; slot <= mask; slot++) {
+            while (nodes[slot] != EMPTY && nowMillis - updatedAt[slot] > maxAgeMillis) {
+                // Backward-shift deletion may pull another entry into this slot, so check it again.
+                removeSlot(slot);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized int reachable() {
+        int reachable = 0;
+        for (int slot = 0; slot <= mask; slot++) {
+            if (nodes[slot] != EMPTY && costs[slot] < INFINITY) {
+                reachable++;
+            }
+        }
+        return reachable;
+    }
+
+    private static int putEntry(byte[] advert, int p, int node, int sequence, int cost) {
+        advert[p] = (byte) (node >>> 24);
+        advert[p + 1] = (byte) (node >>> 16);
+        advert[p + 2] = (byte) (node >>> 8);
+        advert[p + 3] = (byte) node;
+        advert[p + 4] = (byte) (sequence >>> 8);
+        advert[p + 5] = (byte) sequence;
+        advert[p + 6] = (byte) cost;
+        return p + ENTRY_BYTES;
+    }
+
+    private static int hash(int node) {
+        int h = node * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int find(int node) {
+        if (node == EMPTY) {
+            return -1;
+        }
+        for (int slot = hash(node) & mask; ; slot = (slot + 1) & mask) {
+            if (nodes[slot] == node) {
+                return slot;
+            }
+            if (nodes[slot] == EMPTY) {
+                probe[0] = slot;
+                return -1;
+            }
+        }
+    }
+
+    private int findOrInsert(int node) {
+        int slot = find(node);
+        if (slot >= 0) {
+            return slot;
+        }
+        if ((size + 1) * 2 > mask + 1) {
+            grow();
+            find(node);
+        }
+        slot = probe[0];
+        nodes[slot] = node;
+        nextHops[slot] = NO_ROUTE;
+        costs[slot] = INFINITY;
+        sequences[slot] = 0;
+        size++;
+        return slot;
+    }
+
+    private void remove(int node) {
+        int slot = find(node);
+        if (slot >= 0) {
+            removeSlot(slot);
+        }
+    }
+
+    // Linear-probing deletion without tombstones: later entries in the run shift back into the gap.
+    private void removeSlot(int slot) {
+        int gap = slot;
+        for (int next = (gap + 1) & mask; nodes[next] != EMPTY; next = (next + 1) & mask) {
+            int home = hash(nodes[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                move(next, gap);
+                gap = next;
+            }
+        }
+        nodes[gap] = EMPTY;
+        size--;
+    }
+
+    private void move(int from, int to) {
+        nodes[to] = nodes[from];
+        nextHops[to] = nextHops[from];
+        costs[to] = costs[from];
+        sequences[to] = sequences[from];
+        updatedAt[to] = updatedAt[from];
+    }
+
+    private void grow() {
+        int[] oldNodes = nodes;
+        int[] oldNextHops = nextHops;
+        int[] oldCosts = costs;
+        int[] oldSequences = sequences;
+        long[] oldUpdatedAt = updatedAt;
+        allocate(oldNodes.length * 2);
+        for (int i = 0; i < oldNodes.length; i++) {
+            if (oldNodes[i] == EMPTY) {
+                continue;
+            }
+            find(oldNodes[i]);
+            int slot = probe[0];
+            nodes[slot] = oldNodes[i];
+            nextHops[slot] = oldNextHops[i];
+            costs[slot] = oldCosts[i];
+            sequences[slot] = oldSequences[i];
+            updatedAt[slot] = oldUpdatedAt[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        nodes = new int[capacity];
+        nextHops = new int[capacity];
+        costs = new int[capacity];
+        sequences = new int[capacity];
+        updatedAt = new long[capacity];
+        mask = capacity - 1;
+    }
+}
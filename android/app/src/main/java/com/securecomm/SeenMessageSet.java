@@ -0,0 +1,111 @@
+package com.securecomm;
+
+import java.util.Arrays;
+
+/**
+ * Duplicate filter for mesh message ids. Ids are kept in a ring of
+ * open-addressed {@code long} tables, one per time bucket; the oldest bucket is
+ * wiped as time advances, so memory stays fixed and an id is remembered for
+ * between {@code (buckets - 1)} and {@code buckets} bucket lengths.
+ */
+final class SeenMessageSet {
+
+    static final int DEFAULT_BUCKETS = 4;
+    static final long DEFAULT_BUCKET_MILLIS = 30_000;
+    static final int DEFAULT_BUCKET_CAPACITY = 4096;
+
+    // 0 marks an empty slot, so a real id of 0 is stored under this stand-in.
+    private static final long ZERO_ID = 0x9E3779B97F4A7C15L;
+
+    private final long[][] buckets;
+    private final int[] sizes;
+    private final int mask;
+    private final long bucketMillis;
+    private long currentEpoch = Long.MIN_VALUE;
+    private int current;
+
+    SeenMessageSet(int bucketCount, long bucketMillis, int bucketCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(16, bucketCapacity * 2 - 1));
+        this.buckets = new long[bucketCount][capacity];
+        this.sizes = new int[bucketCount];
+        this.mask = capacity - 1;
+        this.bucketMillis = bucketMillis;
+    }
+
+    /** Records {@code id} and returns true if it was not seen within the window. */
+    synchronized boolean add(long id, long nowMillis) {
+        advance(nowMillis);
+        long key = id != 0 ? id : ZERO_ID;
+        for (int i = 0; i < buckets.length; i++) {
+            if (contains(buckets[i], key)) {
+                return false;
+            }
+        }
+        // A full bucket rotates early rather than letting probes degrade.
+        if (sizes[current] * 2 > mask) {
+            rotate();
+        }
+        insert(buckets[current], key);
+        sizes[current]++;
+        return true;
+    }
+
+    synchronized boolean contains(long id, long nowMillis) {
+        advance(nowMillis);
+        long key = id != 0 ? id : ZERO_ID;
+        for (long[] bucket : buckets) {
+            if (contains(bucket, key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void advance(long nowMillis) {
+        long epoch = nowMillis / bucketMillis;
+        if (currentEpoch == Long.MIN_VALUE) {
+            currentEpoch = epoch;
+            return;
+        }
+        long steps = Math.min(epoch - currentEpoch, buckets.length);
+        for (long i = 0; i < steps; i++) {
+            rotate();
+        }
+        if (epoch > currentEpoch) {
+            currentEpoch = epoch;
+        }
+    }
+
+    private void rotate() {
+        current = (current + 1) % buckets.length;
+        Arrays.fill(buckets[current], 0L);
+        sizes[current] = 0;
+    }
+
+    private boolean contains(long[] table, long key) {
+        int slot = hash(key) & mask;
+        while (true) {
+            long value = table[slot];
+            if (value == key) {
+                return true;
+            }
+            if (value == 0) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void insert(long[] table, long key) {
+        int slot = hash(key) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = key;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,58 @@
+package com.securecomm;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs tasks one at a time, in submission order, on a shared pool. Each peer
+ * gets its own instance, so callbacks for one connection stay ordered while
+ * different connections proceed in parallel.
+ */
+final class SerialExecutor implements Executor {
+
+    private static final String TAG = "SerialExecutor";
+    private static final int MAX_TASKS_PER_TURN = 32;
+
+    private final Executor delegate;
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    private boolean scheduled;
+
+    SerialExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        synchronized (this) {
+            tasks.add(task);
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        delegate.execute(this::drain);
+    }
+
+    // Yields the pool thread after a bounded number of tasks so one busy peer cannot starve the rest.
+    private void drain() {
+        for (int i = 0; i < MAX_TASKS_PER_TURN; i++) {
+            Runnable task;
+            synchronized (this) {
+                task = tasks.poll();
+                if (task == null) {
+                    scheduled = false;
+                    return;
+                }
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // One bad callback must not take the process down or stall the tasks queued behind it.
+                Log.e(TAG, "Task failed", e);
+            }
+        }
+        delegate.execute(this::drain);
+    }
+}
@@ -0,0 +1,72 @@
+package com.securecomm;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * AES-GCM helpers backed by one {@link Cipher} per thread, so the provider
+ * lookup in {@link Cipher#getInstance} happens once per thread instead of once
+ * per message.
+ */
+final class SessionCipher {
+
+    static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    static final int TAG_BITS = 128;
+
+    private static final ThreadLocal<Cipher> CIPHERS = new ThreadLocal<Cipher>() {
+        @Override
+        protected Cipher initialValue() {
+            try {
+                return Cipher.getInstance(TRANSFORMATION);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("AES/GCM is not available", e);
+            }
+        }
+    };
+
+    private SessionCipher() {
+    }
+
+    static Cipher cipher() {
+        return CIPHERS.get();
+    }
+
+    /** Encrypts into the legacy {@code base64(iv):base64(ciphertext)} string format. */
+    static String encryptToString(SecretKeySpec key, String data) throws GeneralSecurityException {
+        Cipher cipher = cipher();
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+        byte[] iv = cipher.getIV();
+        byte[] encryptedData = cipher.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        Base64.Encoder encoder = Base64.getEncoder();
+        return encoder.encodeToString(iv) + ":" + encoder.encodeToString(encryptedData);
+    }
+
+    /** Encrypts into a Base64-encoded {@link CryptoFrameCodec} frame. */
+    static String encryptToFrameString(SecretKeySpec key, String data) throws GeneralSecurityException {
+        byte[] frame = CryptoFrameCodec.encrypt(key, data.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(frame);
+    }
+
+    /**
+     * Decrypts either the legacy {@code base64(iv):base64(ciphertext)} string
+     * format or a Base64-encoded {@link CryptoFrameCodec} frame.
+     */
+    static String decryptFromString(SecretKeySpec key, String encryptedData) throws GeneralSecurityException {
+        int separator = encryptedData.indexOf(':');
+        if (separator < 0) {
+            byte[] frame = Base64.getDecoder().decode(encryptedData);
+            return new String(CryptoFrameCodec.decrypt(key, frame, 0, frame.length), StandardCharsets.UTF_8);
+        }
+        Base64.Decoder decoder = Base64.getDecoder();
+        byte[] iv = decoder.decode(encryptedData.substring(0, separator));
+        byte[] data = decoder.decode(encryptedData.substring(separator + 1));
+        Cipher cipher = cipher();
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+        return new String(cipher.doFinal(data), StandardCharsets.UTF_8);
+    }
+}
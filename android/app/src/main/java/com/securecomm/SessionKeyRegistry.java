@@ -0,0 +1,150 @@
+package com.securecomm;
+
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Bounded LRU registry of ready-to-use AES session keys. Callers register the
+ * Base64 key once and then refer to it by an opaque handle, so the per-message
+ * path skips the Base64 decode and {@link SecretKeySpec} construction. Every
+ * registration gets its own handle, so releasing one never revokes the key for
+ * another caller. Raw keys used without a handle are cached separately and
+ * cannot push registered handles out.
+ */
+final class SessionKeyRegistry {
+
+    static final int DEFAULT_CAPACITY = 64;
+
+    private static final class Entry {
+        final String encodedKey;
+        final SecretKeySpec key;
+        // Who the key belongs to, such as a peer fingerprint, so it can be revoked with them.
+        final String owner;
+
+        Entry(String encodedKey, SecretKeySpec key, String owner) {
+            this.encodedKey = encodedKey;
+            this.key = key;
+            this.owner = owner;
+        }
+    }
+
+    private final AtomicLong nextHandle = new AtomicLong();
+    private final Map<String, Set<String>> handlesByKey = new HashMap<>();
+    private final LinkedHashMap<String, Entry> entriesByHandle;
+    private final LinkedHashMap<String, SecretKeySpec> rawKeys;
+
+    SessionKeyRegistry(final int capacity) {
+        this.entriesByHandle = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > capacity) {
+                    unindex(eldest.getKey(), eldest.getValue().encodedKey);
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.rawKeys = new LinkedHashMap<String, SecretKeySpec>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SecretKeySpec> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** Registers a Base64 AES key under a new handle. */
+    synchronized String register(String encodedKey) {
+        return register(encodedKey, null);
+    }
+
+    /** Registers a key on behalf of {@code owner}; {@link #revokeOwner} drops it along with the owner's others. */
+    synchronized String register(String encodedKey, String owner) {
+        SecretKeySpec key = new SecretKeySpec(Base64.getDecoder().decode(encodedKey), "AES");
+        String handle = "sk" + Long.toString(nextHandle.incrementAndGet(), 36);
+        entriesByHandle.put(handle, new Entry(encodedKey, key, owner));
+        handlesByKey.computeIfAbsent(encodedKey, k -> new HashSet<>()).add(handle);
+        return handle;
+    }
+
+    /** Returns the key for a handle, or null if it was released or evicted. */
+    synchronized SecretKeySpec resolve(String handle) {
+        Entry entry = entriesByHandle.get(handle);
+        return entry != null ? entry.key : null;
+    }
+
+    /** Resolves a raw Base64 key through its own cache, never through the handle table. */
+    synchronized SecretKeySpec keyFor(String encodedKey) {
+        SecretKeySpec key = rawKeys.get(encodedKey);
+        if (key == null) {
+            key = new SecretKeySpec(Base64.getDecoder().decode(encodedKey), "AES");
+            rawKeys.put(encodedKey, key);
+        }
+        return key;
+    }
+
+    synchronized boolean release(String handle) {
+        Entry entry = entriesByHandle.remove(handle);
+        if (entry == null) {
+            return false;
+        }
+        unindex(handle, entry.encodedKey);
+        return true;
+    }
+
+    /** Drops every handle registered for a key, and the key's raw cache entry; returns how many handles. */
+    synchronized int revoke(String encodedKey) {
+        rawKeys.remove(encodedKey);
+        Set<String> handles = handlesByKey.remove(encodedKey);
+        if (handles == null) {
+            return 0;
+        }
+        for (String handle : handles) {
+            entriesByHandle.remove(handle);
+        }
+        return handles.size();
+    }
+
+    /** Drops every handle registered for {@code owner}, or for any owner when it is null; returns how many. */
+    synchronized int revokeOwner(String owner) {
+        int revoked = 0;
+        Iterator<Map.Entry<String, Entry>> it = entriesByHandle.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> mapping = it.next();
+            Entry entry = mapping.getValue();
+            if (entry.owner != null && (owner == null || owner.equals(entry.owner))) {
+                it.remove();
+                unindex(mapping.getKey(), entry.encodedKey);
+                revoked++;
+            }
+        }
+        return revoked;
+    }
+
+    synchronized void clear() {
+        entriesByHandle.clear();
+        handlesByKey.clear();
+        rawKeys.clear();
+    }
+
+    synchronized int size() {
+        return entriesByHandle.size();
+    }
+
+    private void unindex(String handle, String encodedKey) {
+        Set<String> handles = handlesByKey.get(encodedKey);
+        if (handles != null) {
+            handles.remove(handle);
+            if (handles.isEmpty()) {
+                handlesByKey.remove(encodedKey);
+            }
+        }
+    }
+}
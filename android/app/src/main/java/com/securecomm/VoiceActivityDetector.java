@@ -0,0 +1,112 @@
+package com.securecomm;
+
+/**
+ * Energy VAD over per-buffer RMS levels. The noise floor tracks the quietest
+ * recent level: it falls quickly and creeps up slowly, so steady background
+ * noise is learned while speech is not. Speech starts 10 dB above the floor
+ * and ends below 6 dB above it. The hysteresis and a hangover keep word gaps
+ * and trailing consonants from being clipped. While suppressing, a
+ * {@link #KEEPALIVE} is returned immediately and then every keepalive period.
+ */
+final class VoiceActivityDetector {
+
+    static final int SEND = 0;
+    static final int SUPPRESS = 1;
+    static final int KEEPALIVE = 2;
+
+    private static final double ONSET_RATIO = 3.16;
+    private static final double RELEASE_RATIO = 2.0;
+    // Below about -54 dBFS nothing counts as speech, however quiet the room.
+    private static final double MIN_SPEECH_LEVEL = 0.002;
+    private static final double FLOOR_FALL = 0.3;
+    private static final double FLOOR_RISE_PER_SECOND = 0.5;
+    private static final double FLOOR_RISE_ACTIVE_PER_SECOND = 0.1;
+    private static final double INITIAL_FLOOR = 0.0005;
+
+    private final int hangoverMillis;
+    private final int keepaliveMillis;
+
+    private double noiseFloor = INITIAL_FLOOR;
+    private boolean active;
+    private int hangoverLeft;
+    private int sinceKeepalive;
+
+    private long frames;
+    private long suppressed;
+    private long keepalives;
+
+    VoiceActivityDetector(int hangoverMillis, int keepaliveMillis) {
+        this.hangoverMillis = hangoverMillis;
+        this.keepaliveMillis = keepaliveMillis;
+        this.sinceKeepalive = keepaliveMillis;
+    }
+
+    /** Classifies one buffer of {@code durationMillis} with RMS {@code level} (0..1). */
+    synchronized int process(double level, int durationMillis) {
+        frames++;
+        updateFloor(level, durationMillis);
+        double threshold = Math.max(MIN_SPEECH_LEVEL, noiseFloor * (active ? RELEASE_RATIO : ONSET_RATIO));
+        if (level >= threshold) {
+            active = true;
+            hangoverLeft = hangoverMillis;
+        } else if (active) {
+            hangoverLeft -= durationMillis;
+            if (hangoverLeft <= 0) {
+                active = false;
+                sinceKeepalive = keepaliveMillis;
+            }
+        }
+        if (active) {
+            return SEND;
+        }
+        suppressed++;
+        sinceKeepalive += durationMillis;
+        if (sinceKeepalive >= keepaliveMillis) {
+            sinceKeepalive = 0;
+            keepalives++;
+            return KEEPALIVE;
+        }
+        return SUPPRESS;
+    }
+
+    /** Starts a new capture: the first silent buffer sends a marker again. */
+    synchronized void reset() {
+        active = false;
+        hangoverLeft = 0;
+        sinceKeepalive = keepaliveMillis;
+    }
+
+    synchronized double noiseFloor() {
+        return noiseFloor;
+    }
+
+    synchronized boolean isActive() {
+        return active;
+    }
+
+    synchronized long frames() {
+        return frames;
+    }
+
+    synchronized long suppressed() {
+        return suppressed;
+    }
+
+    synchronized long keepalives() {
+        return keepalives;
+    }
+
+    synchronized double suppressedFraction() {
+        return frames == 0 ? 0 : (double) suppressed / frames;
+    }
+
+    private void updateFloor(double level, int durationMillis) {
+        if (level < noiseFloor) {
+            noiseFloor += (level - noiseFloor) * FLOOR_FALL;
+        } else {
+            double rise = active ? FLOOR_RISE_ACTIVE_PER_SECOND : FLOOR_RISE_PER_SECOND;
+            noiseFloor = Math.min(level, noiseFloor * (1 + rise * durationMillis / 1000.0));
+        }
+        noiseFloor = Math.max(noiseFloor, 1e-5);
+    }
+}
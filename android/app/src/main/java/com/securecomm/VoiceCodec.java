@@ -0,0 +1,56 @@
+package com.securecomm;
+
+/**
+ * A narrowband voice codec working on fixed 20 ms frames of 16-bit mono
+ * samples at {@link #sampleRate()}. Each encoded frame starts with
+ * {@link #codecId()} and is independently decodable, so a lost frame never
+ * corrupts the ones after it.
+ */
+interface VoiceCodec {
+
+    String MODE_PCM = "pcm";
+    String MODE_ADPCM_8K = "adpcm8";
+    String MODE_ADPCM_16K = "adpcm16";
+
+    int FRAME_MILLIS = 20;
+
+    byte codecId();
+
+    int sampleRate();
+
+    int frameSamples();
+
+    int encodedFrameBytes();
+
+    /** Encodes {@link #frameSamples()} samples and returns the bytes written. */
+    int encode(short[] pcm, int offset, byte[] out, int outOffset);
+
+    /** Decodes one frame of {@link #encodedFrameBytes()} and returns the samples written. */
+    int decode(byte[] in, int inOffset, short[] pcm, int offset);
+
+    /** Returns a codec for {@code mode}, or null for raw PCM. */
+    static VoiceCodec forMode(String mode) {
+        if (mode == null || MODE_PCM.equals(mode)) {
+            return null;
+        }
+        if (MODE_ADPCM_8K.equals(mode)) {
+            return new ImaAdpcmCodec(8_000);
+        }
+        if (MODE_ADPCM_16K.equals(mode)) {
+            return new ImaAdpcmCodec(16_000);
+        }
+        throw new IllegalArgumentException("Unknown voice codec " + mode);
+    }
+
+    /** Returns a decoder for an encoded frame's leading id byte, or null if it is not a known codec. */
+    static VoiceCodec forId(byte codecId) {
+        switch (codecId) {
+            case ImaAdpcmCodec.ID_8K:
+                return new ImaAdpcmCodec(8_000);
+            case ImaAdpcmCodec.ID_16K:
+                return new ImaAdpcmCodec(16_000);
+            default:
+                return null;
+        }
+    }
+}
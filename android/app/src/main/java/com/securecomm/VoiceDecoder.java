@@ -0,0 +1,57 @@
+package com.securecomm;
+
+/**
+ * Playback-side codec stage: decodes whole frames and resamples them to the
+ * output rate. The codec is picked from each frame's id byte, so a sender may
+ * switch modes mid-stream.
+ */
+final class VoiceDecoder {
+
+    private final int outputRate;
+    private VoiceCodec codec;
+    private Resampler resampler;
+    private short[] frame = new short[0];
+    private short[] samples = new short[0];
+
+    VoiceDecoder(int outputRate) {
+        this.outputRate = outputRate;
+    }
+
+    /**
+     * Decodes every whole frame in {@code data[offset, offset + length)} and
+     * returns the number of output-rate samples now in {@link #samples()}, or
+     * -1 if a frame has an unknown codec id.
+     */
+    int decode(byte[] data, int offset, int length) {
+        int produced = 0;
+        int end = offset + length;
+        for (int p = offset; p < end; ) {
+            if (codec == null || codec.codecId() != data[p]) {
+                codec = VoiceCodec.forId(data[p]);
+                if (codec == null) {
+                    return -1;
+                }
+                resampler = new Resampler(codec.sampleRate(), outputRate);
+                frame = new short[codec.frameSamples()];
+            }
+            int frameBytes = codec.encodedFrameBytes();
+            if (p + frameBytes > end) {
+                break;
+            }
+            codec.decode(data, p, frame, 0);
+            int needed = produced + resampler.maxOutput(frame.length);
+            if (needed > samples.length) {
+                short[] grown = new short[Math.max(needed, samples.length * 2)];
+                System.arraycopy(samples, 0, grown, 0, produced);
+                samples = grown;
+            }
+            produced += resampler.process(frame, 0, frame.length, samples, produced);
+            p += frameBytes;
+        }
+        return produced;
+    }
+
+    short[] samples() {
+        return samples;
+    }
+}
@@ -0,0 +1,62 @@
+package com.securecomm;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Capture-side codec stage: resamples device-rate PCM to the codec rate,
+ * slices it into 20 ms frames and encodes each one. Samples left over from one
+ * capture buffer are carried into the next frame.
+ */
+final class VoiceEncoder {
+
+    interface Output {
+        /** Receives one encoded frame; the buffer is reused and only valid during the call. */
+        void onFrame(ByteBuffer encoded);
+    }
+
+    private final VoiceCodec codec;
+    private final Resampler resampler;
+    private final short[] frame;
+    private final byte[] encoded;
+    private final ByteBuffer encodedView;
+    private short[] resampled;
+    private int filled;
+
+    VoiceEncoder(VoiceCodec codec, int inputRate, int maxInputBytes) {
+        this.codec = codec;
+        this.resampler = new Resampler(inputRate, codec.sampleRate());
+        this.frame = new short[codec.frameSamples()];
+        this.encoded = new byte[codec.encodedFrameBytes()];
+        this.encodedView = ByteBuffer.wrap(encoded);
+        this.resampled = new short[resampler.maxOutput(Math.max(1, maxInputBytes / 2))];
+    }
+
+    /** Consumes the PCM between position and limit and returns the number of frames emitted. */
+    int encode(ByteBuffer pcm, Output output) {
+        int needed = resampler.maxOutput(pcm.remaining() / 2);
+        if (needed > resampled.length) {
+            resampled = new short[needed];
+        }
+        int available = resampler.processLittleEndian(pcm, resampled, 0);
+        pcm.position(pcm.limit());
+        int frames = 0;
+        for (int read = 0; read < available; ) {
+            int take = Math.min(available - read, frame.length - filled);
+            System.arraycopy(resampled, read, frame, filled, take);
+            filled += take;
+            read += take;
+            if (filled == frame.length) {
+                int length = codec.encode(frame, 0, encoded, 0);
+                encodedView.clear().limit(length);
+                output.onFrame(encodedView);
+                filled = 0;
+                frames++;
+            }
+        }
+        return frames;
+    }
+
+    VoiceCodec codec() {
+        return codec;
+    }
+}
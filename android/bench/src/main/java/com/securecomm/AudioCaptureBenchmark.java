@@ -0,0 +1,124 @@
+package com.securecomm;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Bytes allocated per captured buffer for the old capture loop and the pooled
+ * pipeline, measured with the per-thread allocation counter. Buffers are
+ * synthetic 40 ms frames at 44.1 kHz, the size AudioRecord typically reports
+ * as its minimum buffer on phones.
+ */
+public final class AudioCaptureBenchmark {
+
+    private static final int SAMPLE_RATE = 44_100;
+    private static final int FRAME_BYTES = 3_528;
+    private static final int FRAMES = 200_000;
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        byte[] source = new byte[FRAME_BYTES];
+        for (int i = 0; i < FRAME_BYTES / 2; i++) {
+            short sample = (short) (8000 * Math.sin(i * 2 * Math.PI * 440 / SAMPLE_RATE));
+            source[2 * i] = (byte) sample;
+            source[2 * i + 1] = (byte) (sample >> 8);
+        }
+        SecretKeySpec key = new SecretKeySpec(new byte[32], "AES");
+        double framesPerSecond = SAMPLE_RATE * 2.0 / FRAME_BYTES;
+
+        System.out.printf("== capture loop allocation, %d-byte frames (%.1f frames/s real time) ==%n",
+                FRAME_BYTES, framesPerSecond);
+        report("legacy: Base64 + boxed level per buffer", framesPerSecond, () -> legacyLoop(source));
+        report("pooled, JS sink (Base64 only)", framesPerSecond, () -> pooledJsLoop(source));
+        report("pooled, level only (VAD/meter path)", framesPerSecond, () -> pooledLevelLoop(source));
+        report("pooled, direct encrypted packet", framesPerSecond, () -> pooledDirectLoop(source, key));
+
+        ByteBuffer frame = ByteBuffer.allocateDirect(FRAME_BYTES);
+        frame.put(source).flip();
+        Bench.run("PcmLevel.rms (" + FRAME_BYTES + " bytes)", 200_000, () -> PcmLevel.rms(frame));
+    }
+
+    private interface Loop {
+        void run() throws Exception;
+    }
+
+    private static void report(String name, double framesPerSecond, Loop loop) throws Exception {
+        loop.run();
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        loop.run();
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        double perFrame = (double) allocated / FRAMES;
+        System.out.printf("%-42s %9.0f B/frame %9.1f KiB/s at real time %8.2f us/frame%n",
+                name, perFrame, perFrame * framesPerSecond / 1024, elapsed / 1e3 / FRAMES);
+    }
+
+    // The loop as it was: Base64 string and a boxed Double for every buffer, plus the signed-byte RMS.
+    private static void legacyLoop(byte[] source) {
+        byte[] buffer = new byte[FRAME_BYTES];
+        for (int f = 0; f < FRAMES; f++) {
+            System.arraycopy(source, 0, buffer, 0, FRAME_BYTES);
+            sink = Base64.getEncoder().encodeToString(buffer);
+            long sum = 0;
+            for (int i = 0; i < FRAME_BYTES; i += 2) {
+                short sample = (short) ((buffer[i + 1] << 8) | buffer[i]);
+                sum += sample * sample;
+            }
+            Object volume = Math.sqrt(sum / (FRAME_BYTES / 2)) / 32768.0;
+            sink = volume;
+        }
+    }
+
+    private static void pooledJsLoop(byte[] source) {
+        PcmFramePool pool = new PcmFramePool(4, FRAME_BYTES);
+        byte[] scratch = new byte[FRAME_BYTES];
+        double level = 0;
+        for (int f = 0; f < FRAMES; f++) {
+            ByteBuffer frame = pool.acquire();
+            frame.put(source).flip();
+            level += PcmLevel.rms(frame);
+            int length = frame.remaining();
+            frame.get(scratch, 0, length);
+            sink = Base64.getEncoder().encodeToString(scratch);
+            pool.release(frame);
+        }
+        sink = level;
+    }
+
+    private static void pooledLevelLoop(byte[] source) {
+        PcmFramePool pool = new PcmFramePool(4, FRAME_BYTES);
+        double level = 0;
+        for (int f = 0; f < FRAMES; f++) {
+            ByteBuffer frame = pool.acquire();
+            frame.put(source).flip();
+            level += PcmLevel.rms(frame);
+            pool.release(frame);
+        }
+        sink = level;
+    }
+
+    // Mirrors BluetoothMeshModule.sendAudioFrame: one packet array, encrypted in place.
+    private static void pooledDirectLoop(byte[] source, SecretKeySpec key) throws Exception {
+        PcmFramePool pool = new PcmFramePool(4, FRAME_BYTES);
+        double level = 0;
+        for (int f = 0; f < FRAMES; f++) {
+            ByteBuffer frame = pool.acquire();
+            frame.put(source).flip();
+            level += PcmLevel.rms(frame);
+            int length = CryptoFrameCodec.frameLength(frame.remaining());
+            byte[] packet = MeshPacket.allocate(MeshPacket.FLAG_AUDIO, 1, f, 1, 2, length);
+            CryptoFrameCodec.encrypt(key, frame, ByteBuffer.wrap(packet, MeshPacket.HEADER_BYTES, length));
+            sink = packet;
+            pool.release(frame);
+        }
+        sink = level;
+    }
+}
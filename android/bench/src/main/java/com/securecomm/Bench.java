@@ -0,0 +1,41 @@
+package com.securecomm;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minimal warmup-then-measure harness for the plain-JVM benchmarks. Each
+ * benchmark returns a value that is folded into a sink so the JIT cannot
+ * eliminate the measured work.
+ */
+final class Bench {
+
+    interface Op {
+        Object run() throws Exception;
+    }
+
+    private static volatile int sink;
+
+    private Bench() {
+    }
+
+    static double run(String name, int iterations, Op op) throws Exception {
+        measure(op, Math.max(1, iterations / 2));
+        long elapsed = measure(op, iterations);
+        double nsPerOp = (double) elapsed / iterations;
+        double opsPerSec = TimeUnit.SECONDS.toNanos(1) / nsPerOp;
+        System.out.printf("%-40s %12.1f ns/op %14.0f ops/s%n", name, nsPerOp, opsPerSec);
+        return nsPerOp;
+    }
+
+    private static long measure(Op op, int iterations) throws Exception {
+        int acc = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            Object result = op.run();
+            acc += result != null ? result.hashCode() : 0;
+        }
+        long elapsed = System.nanoTime() - start;
+        sink += acc;
+        return elapsed;
+    }
+}
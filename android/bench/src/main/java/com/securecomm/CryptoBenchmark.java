@@ -0,0 +1,102 @@
+package com.securecomm;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+public final class CryptoBenchmark {
+
+    private static final int ITERATIONS = 200_000;
+
+    public static void main(String[] args) throws Exception {
+        byte[] rawKey = new byte[32];
+        new SecureRandom().nextBytes(rawKey);
+        String key = Base64.getEncoder().encodeToString(rawKey);
+        String message = "{\"type\":\"chat\",\"body\":\"Meet at the north gate in ten minutes\"}";
+
+        SessionKeyRegistry registry = new SessionKeyRegistry(SessionKeyRegistry.DEFAULT_CAPACITY);
+        String handle = registry.register(key);
+        String ciphertext = SessionCipher.encryptToString(registry.resolve(handle), message);
+
+        System.out.println("== session key reuse (" + message.length() + " byte message) ==");
+        Bench.run("encrypt: per-call key + Cipher", ITERATIONS, () -> legacyEncrypt(message, key));
+        Bench.run("encrypt: cached key + thread Cipher", ITERATIONS,
+                () -> SessionCipher.encryptToString(registry.resolve(handle), message));
+        Bench.run("decrypt: per-call key + Cipher", ITERATIONS, () -> legacyDecrypt(ciphertext, key));
+        Bench.run("decrypt: cached key + thread Cipher", ITERATIONS,
+                () -> SessionCipher.decryptFromString(registry.resolve(handle), ciphertext));
+
+        System.out.println("== wire format: string + BLE Base64 vs binary frame ==");
+        SecretKeySpec secretKey = registry.resolve(handle);
+        byte[] plaintext = message.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer in = ByteBuffer.wrap(plaintext);
+        ByteBuffer frame = ByteBuffer.allocate(CryptoFrameCodec.frameLength(plaintext.length));
+        ByteBuffer out = ByteBuffer.allocate(plaintext.length);
+        System.out.println("string format bytes: "
+                + SessionCipher.encryptToString(secretKey, message).getBytes(StandardCharsets.UTF_8).length
+                + ", frame bytes: " + CryptoFrameCodec.frameLength(plaintext.length));
+        Bench.run("send: string + Base64 for BLE", ITERATIONS, () -> Base64.getEncoder()
+                .encodeToString(SessionCipher.encryptToString(secretKey, message).getBytes(StandardCharsets.UTF_8)));
+        Bench.run("send: frame into reused buffer", ITERATIONS, () -> {
+            in.rewind();
+            frame.clear();
+            return CryptoFrameCodec.encrypt(secretKey, in, frame);
+        });
+        frame.flip();
+        Bench.run("receive: frame into reused buffer", ITERATIONS, () -> {
+            frame.rewind();
+            out.clear();
+            return CryptoFrameCodec.decrypt(secretKey, frame, out);
+        });
+
+        int burst = 64;
+        List<String> payloads = new ArrayList<>(burst);
+        for (int i = 0; i < burst; i++) {
+            payloads.add(message + i);
+        }
+        CryptoBatchProcessor processor = new CryptoBatchProcessor(CryptoBatchProcessor.defaultParallelism());
+        System.out.println("== relay burst of " + burst + " messages, "
+                + processor.parallelism() + " workers ==");
+        Bench.run("burst: sequential encrypt", ITERATIONS / burst, () -> {
+            String last = null;
+            for (String payload : payloads) {
+                last = SessionCipher.encryptToString(secretKey, payload);
+            }
+            return last;
+        });
+        Bench.run("burst: encryptBatch", ITERATIONS / burst,
+                () -> processor.submit(payloads, data -> SessionCipher.encryptToString(secretKey, data)).get());
+        System.out.printf("batch counters: %d batches, %d items, %d failures, %.0f items/s%n",
+                processor.batches(), processor.items(), processor.failures(), processor.itemsPerSecond());
+    }
+
+    // Mirrors the original CryptoModule.encrypt body.
+    private static String legacyEncrypt(String data, String key) throws Exception {
+        byte[] keyBytes = Base64.getDecoder().decode(key);
+        SecretKeySpec secretKey = new SecretKeySpec(keyBytes, "AES");
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey);
+        byte[] iv = cipher.getIV();
+        byte[] encryptedData = cipher.doFinal(data.getBytes());
+        return Base64.getEncoder().encodeToString(iv) + ":" + Base64.getEncoder().encodeToString(encryptedData);
+    }
+
+    // Mirrors the original CryptoModule.decrypt body.
+    private static String legacyDecrypt(String encryptedData, String key) throws Exception {
+        byte[] keyBytes = Base64.getDecoder().decode(key);
+        SecretKeySpec secretKey = new SecretKeySpec(keyBytes, "AES");
+        String[] parts = encryptedData.split(":");
+        byte[] iv = Base64.getDecoder().decode(parts[0]);
+        byte[] data = Base64.getDecoder().decode(parts[1]);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, secretKey, new GCMParameterSpec(128, iv));
+        return new String(cipher.doFinal(data));
+    }
+}
@@ -0,0 +1,56 @@
+package com.securecomm;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Simulates a crowded scan: 200 devices seen at random, about ten times a second each. */
+public final class EventBatchingBenchmark {
+
+    private static final int DEVICES = 200;
+    private static final int SIGHTINGS_PER_SECOND = DEVICES * 10;
+    private static final long RUN_MILLIS = 2_000;
+
+    public static void main(String[] args) throws Exception {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        System.out.println("== " + SIGHTINGS_PER_SECOND + " scan callbacks/s from " + DEVICES + " devices ==");
+        for (int window : new int[] {0, 16, 50}) {
+            final LongAdder delivered = new LongAdder();
+            EventBatcher batcher = new EventBatcher(new EventBatcher.Emitter() {
+                @Override
+                public void emit(String eventName, Object payload) {
+                    delivered.increment();
+                }
+
+                @Override
+                public void emitBatch(String eventName, List<Object> payloads) {
+                    delivered.add(payloads.size());
+                }
+            }, scheduler);
+            batcher.configure(window, 256);
+            Random random = new Random(42);
+
+            long start = System.nanoTime();
+            long end = start + TimeUnit.MILLISECONDS.toNanos(RUN_MILLIS);
+            long period = TimeUnit.SECONDS.toNanos(1) / SIGHTINGS_PER_SECOND;
+            for (long next = start; next < end; next += period) {
+                while (System.nanoTime() < next) {
+                    Thread.onSpinWait();
+                }
+                String address = "AA:BB:CC:00:" + random.nextInt(DEVICES);
+                batcher.post("DeviceDiscovered", address, address);
+            }
+            batcher.flushAll();
+            System.out.printf("window %2d ms: %7.0f events/s in, %7.0f bridge calls/s, %5.1f%% coalesced, %d delivered%n",
+                    window, batcher.postedPerSecond(), batcher.bridgeCallsPerSecond(),
+                    100.0 * batcher.coalesced() / batcher.posted(), delivered.sum());
+        }
+    }
+}
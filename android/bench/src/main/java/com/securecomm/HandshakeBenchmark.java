@@ -0,0 +1,45 @@
+package com.securecomm;
+
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+
+import javax.crypto.KeyAgreement;
+
+public final class HandshakeBenchmark {
+
+    private static final int ITERATIONS = 2_000;
+
+    public static void main(String[] args) throws Exception {
+        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("EC");
+        keyGen.initialize(256);
+        KeyPair local = keyGen.generateKeyPair();
+        KeyPair remote = keyGen.generateKeyPair();
+        String remoteKey = Base64.getEncoder().encodeToString(remote.getPublic().getEncoded());
+
+        PeerSecretCache cache = new PeerSecretCache(PeerSecretCache.DEFAULT_CAPACITY, PeerSecretCache.DEFAULT_TTL_MILLIS);
+        PeerSecretCache cold = new PeerSecretCache(PeerSecretCache.DEFAULT_CAPACITY, PeerSecretCache.DEFAULT_TTL_MILLIS);
+
+        System.out.println("== repeat handshake with a known peer ==");
+        Bench.run("generateSharedSecret: uncached", ITERATIONS, () -> legacySharedSecret(local, remoteKey));
+        Bench.run("resolve: miss (ECDH + HKDF)", ITERATIONS, () -> {
+            cold.clear();
+            return cold.resolve(local, remoteKey);
+        });
+        Bench.run("resolve: hit", ITERATIONS * 100, () -> cache.resolve(local, remoteKey));
+        System.out.printf("cache counters: %d hits, %d misses%n", cache.hits(), cache.misses());
+    }
+
+    // Mirrors the original CryptoModule.generateSharedSecret body.
+    private static String legacySharedSecret(KeyPair local, String remotePublicKeyString) throws Exception {
+        KeyAgreement keyAgreement = KeyAgreement.getInstance("ECDH");
+        keyAgreement.init(local.getPrivate());
+        byte[] remotePublicKeyBytes = Base64.getDecoder().decode(remotePublicKeyString);
+        PublicKey remotePublicKey = KeyFactory.getInstance("EC").generatePublic(new X509EncodedKeySpec(remotePublicKeyBytes));
+        keyAgreement.doPhase(remotePublicKey, true);
+        return Base64.getEncoder().encodeToString(keyAgreement.generateSecret());
+    }
+}
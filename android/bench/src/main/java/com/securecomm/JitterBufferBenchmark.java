@@ -0,0 +1,123 @@
+package com.securecomm;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Replays a minute of 20 ms voice frames through simulated mesh delay and
+ * compares playout quality. The old path wrote each frame as it arrived. The
+ * jitter buffer is drained by a 20 ms playout clock. Delay is a fixed base
+ * plus exponential jitter per hop, with random loss.
+ */
+public final class JitterBufferBenchmark {
+
+    private static final int FRAME_MILLIS = VoiceCodec.FRAME_MILLIS;
+    private static final int FRAMES = 60_000 / FRAME_MILLIS;
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("== playout of %d frames (%d ms each) ==%n", FRAMES, FRAME_MILLIS);
+        System.out.printf("%-26s %-12s %9s %9s %9s %9s %11s %9s%n", "network", "path",
+                "gaps", "reordered", "late", "concealed", "latency ms", "target");
+        for (int hops = 1; hops <= 3; hops++) {
+            for (double loss : new double[] {0.0, 0.03}) {
+                long[] arrivals = arrivals(new Random(hops * 31 + (int) (loss * 100)), hops, 8.0, loss);
+                String network = String.format("%d hop(s), %.0f%% loss", hops, loss * 100);
+                direct(network, arrivals);
+                buffered(network, arrivals);
+            }
+        }
+        JitterBuffer buffer = new JitterBuffer(64, FRAME_MILLIS, 2, 12);
+        byte[] frame = new byte[84];
+        int[] sequence = {0};
+        Bench.run("offer + take", 2_000_000, () -> {
+            buffer.offer(sequence[0], frame, sequence[0] * FRAME_MILLIS);
+            sequence[0]++;
+            return buffer.take();
+        });
+    }
+
+    // Send time is sequence * 20 ms; -1 marks a lost frame.
+    private static long[] arrivals(Random random, int hops, double meanJitterMillis, double loss) {
+        long[] arrivals = new long[FRAMES];
+        for (int i = 0; i < FRAMES; i++) {
+            if (random.nextDouble() < loss) {
+                arrivals[i] = -1;
+                continue;
+            }
+            double delay = 0;
+            for (int hop = 0; hop < hops; hop++) {
+                delay += 10 - meanJitterMillis * Math.log(1 - random.nextDouble());
+            }
+            arrivals[i] = (long) i * FRAME_MILLIS + (long) delay;
+        }
+        return arrivals;
+    }
+
+    // Write-on-arrival: every moment the track runs dry is an audible gap, and reordered frames play out of order.
+    private static void direct(String network, long[] arrivals) {
+        Integer[] order = new Integer[FRAMES];
+        for (int i = 0; i < FRAMES; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(arrivals[a], arrivals[b]));
+        long trackEnd = Long.MIN_VALUE;
+        int gaps = 0;
+        int reordered = 0;
+        int lastPlayed = -1;
+        long latency = 0;
+        int played = 0;
+        for (int k = 0; k < FRAMES; k++) {
+            long arrival = arrivals[order[k]];
+            if (arrival < 0) {
+                continue;
+            }
+            if (order[k] < lastPlayed) {
+                reordered++;
+            }
+            lastPlayed = Math.max(lastPlayed, order[k]);
+            if (arrival > trackEnd && trackEnd != Long.MIN_VALUE) {
+                gaps++;
+            }
+            long start = Math.max(arrival, trackEnd);
+            trackEnd = start + FRAME_MILLIS;
+            latency += start - (long) order[k] * FRAME_MILLIS;
+            played++;
+        }
+        System.out.printf("%-26s %-12s %9d %9d %9s %9s %11.1f %9s%n", network, "direct", gaps, reordered,
+                "-", "-", (double) latency / played, "-");
+    }
+
+    private static void buffered(String network, long[] arrivals) {
+        JitterBuffer buffer = new JitterBuffer(64, FRAME_MILLIS, 2, 12);
+        Integer[] order = new Integer[FRAMES];
+        for (int i = 0; i < FRAMES; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(arrivals[a], arrivals[b]));
+        int next = 0;
+        while (next < FRAMES && arrivals[order[next]] < 0) {
+            next++;
+        }
+        long latency = 0;
+        int played = 0;
+        long now = arrivals[order[next]];
+        while (next < FRAMES || buffer.depth() > 0) {
+            while (next < FRAMES && arrivals[order[next]] <= now) {
+                int sequence = order[next];
+                byte[] frame = {(byte) sequence, (byte) (sequence >> 8), (byte) (sequence >> 16)};
+                buffer.offer(sequence, frame, arrivals[sequence]);
+                next++;
+            }
+            byte[] frame = buffer.take();
+            if (frame != null && frame != JitterBuffer.MISSING) {
+                int sequence = (frame[0] & 0xff) | ((frame[1] & 0xff) << 8) | ((frame[2] & 0xff) << 16);
+                latency += now - (long) sequence * FRAME_MILLIS;
+                played++;
+            }
+            now += FRAME_MILLIS;
+        }
+        System.out.printf("%-26s %-12s %9d %9d %9d %9d %11.1f %9d%n", network, "jitter buf",
+                buffer.underruns(), 0, buffer.late(), buffer.concealed(), (double) latency / played,
+                buffer.targetDepth());
+    }
+}
@@ -0,0 +1,80 @@
+package com.securecomm;
+
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public final class KeyPoolBenchmark {
+
+    private static final int SAMPLES = 51;
+
+    public static void main(String[] args) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "keygen");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // The first key pair in a process also pays for provider and class setup.
+        long start = System.nanoTime();
+        EphemeralKeyPool.generate();
+        long coldInline = System.nanoTime() - start;
+
+        long[] inline = new long[SAMPLES];
+        long[] offThread = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            start = System.nanoTime();
+            EphemeralKeyPool.generate();
+            inline[i] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            CompletableFuture<KeyPair> identity = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return EphemeralKeyPool.generate();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }, executor);
+            offThread[i] = System.nanoTime() - start;
+            identity.get();
+        }
+
+        System.out.println("== module init: time the constructor blocks (median) ==");
+        System.out.printf("key pair generated inline, cold process:  %8.3f ms%n", coldInline / 1e6);
+        System.out.printf("key pair generated inline, warm:          %8.3f ms%n", median(inline) / 1e6);
+        System.out.printf("key pair generation handed off:           %8.3f ms%n", median(offThread) / 1e6);
+
+        String remoteKey = Base64.getEncoder().encodeToString(EphemeralKeyPool.generate().getPublic().getEncoded());
+        EphemeralKeyPool pool = new EphemeralKeyPool(EphemeralKeyPool.DEFAULT_CAPACITY, executor);
+
+        long[] fresh = new long[SAMPLES];
+        long[] pooled = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            start = System.nanoTime();
+            PeerSecretCache.handshake(EphemeralKeyPool.generate(), remoteKey);
+            fresh[i] = System.nanoTime() - start;
+
+            pool.refill();
+            while (pool.available() < EphemeralKeyPool.DEFAULT_CAPACITY) {
+                Thread.sleep(1);
+            }
+            start = System.nanoTime();
+            PeerSecretCache.handshake(pool.acquire().keyPair, remoteKey);
+            pooled[i] = System.nanoTime() - start;
+        }
+
+        System.out.println("== ephemeral handshake latency (median) ==");
+        System.out.printf("fresh key pair + ECDH + HKDF:             %8.3f ms%n", median(fresh) / 1e6);
+        System.out.printf("pooled key pair + ECDH + HKDF:            %8.3f ms%n", median(pooled) / 1e6);
+        System.out.printf("pool hits %d, misses %d%n", pool.hits(), pool.misses());
+    }
+
+    private static long median(long[] samples) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
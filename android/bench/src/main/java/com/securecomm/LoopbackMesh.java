@@ -0,0 +1,268 @@
+package com.securecomm;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Discrete-event simulation of a mesh of {@link MeshNode}s joined by
+ * in-memory links, on a virtual clock in microseconds. Nodes are scattered
+ * over a unit square, and two nodes share a link when they are within radio
+ * range. Each link carries one MTU-sized fragment per connection event, like
+ * an acknowledged GATT write. It refuses packets once its backlog is too
+ * deep, like a full {@link GattWriteQueue}. Every fragment is lost with a set
+ * probability and arrives after a random propagation delay. The receiving
+ * node runs the same {@link PacketReassembler} and relay code as a phone.
+ *
+ * <p>Single-threaded: everything runs inside {@link #runUntil(long)}.
+ */
+final class LoopbackMesh {
+
+    /** Called when a packet reaches a node that should deliver it to the app. */
+    interface Listener {
+        void onDeliver(int node, byte[] packet, long nowMicros);
+    }
+
+    static final class Config {
+        int nodes = 200;
+        /** Link range as a fraction of the square's side. */
+        double radius = 0.13;
+        double loss;
+        int mtu = 185;
+        long connectionIntervalMicros = 7_500;
+        long minDelayMicros = 1_000;
+        long jitterMicros = 4_000;
+        long maxBacklogMicros = 64 * 7_500;
+        long seed = 1;
+    }
+
+    private static final class Event implements Comparable<Event> {
+        final long time;
+        final long order;
+        final Runnable task;
+
+        Event(long time, long order, Runnable task) {
+            this.time = time;
+            this.order = order;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            return time != other.time ? Long.compare(time, other.time) : Long.compare(order, other.order);
+        }
+    }
+
+    private final Config config;
+    private final Listener listener;
+    private final Random random;
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private final String[] addresses;
+    private final Map<String, Integer> indexOf = new HashMap<>();
+    private final List<List<String>> links = new ArrayList<>();
+    private final Map<String, Long> busyUntil = new HashMap<>();
+    private final MeshNode[] nodes;
+    private final PacketReassembler[] reassemblers;
+    private final int[] fragmentIds;
+    private long now;
+    private long order;
+
+    private long fragmentsSent;
+    private long fragmentsLost;
+    private long refused;
+    private long packetsHandled;
+
+    LoopbackMesh(Config config, Listener listener) {
+        this.config = config;
+        this.listener = listener;
+        this.random = new Random(config.seed);
+        int n = config.nodes;
+        addresses = new String[n];
+        nodes = new MeshNode[n];
+        reassemblers = new PacketReassembler[n];
+        fragmentIds = new int[n];
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            addresses[i] = String.format("02:00:00:00:%02X:%02X", i >>> 8, i & 0xff);
+            indexOf.put(addresses[i], i);
+            x[i] = random.nextDouble();
+            y[i] = random.nextDouble();
+            links.add(new ArrayList<>());
+        }
+        double r2 = config.radius * config.radius;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                double dx = x[i] - x[j];
+                double dy = y[i] - y[j];
+                if (dx * dx + dy * dy <= r2) {
+                    links.get(i).add(addresses[j]);
+                    links.get(j).add(addresses[i]);
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            final int self = i;
+            nodes[i] = new MeshNode(nodeId(i), new SeenMessageSet(SeenMessageSet.DEFAULT_BUCKETS,
+                    SeenMessageSet.DEFAULT_BUCKET_MILLIS, SeenMessageSet.DEFAULT_BUCKET_CAPACITY), n,
+                    new MeshTransport() {
+                        @Override
+                        public Iterable<String> links() {
+                            return links.get(self);
+                        }
+
+                        @Override
+                        public boolean send(String link, byte[] packet, int trafficClass) {
+                            return transmit(self, link, packet);
+                        }
+                    });
+            reassemblers[i] = new PacketReassembler(PacketReassembler.DEFAULT_TIMEOUT_MILLIS,
+                    PacketReassembler.DEFAULT_MAX_PARTIALS);
+        }
+    }
+
+    /** Node ids start at one; zero is {@link RoutingTable#NO_ROUTE}. */
+    static int nodeId(int node) {
+        return node + 1;
+    }
+
+    int size() {
+        return nodes.length;
+    }
+
+    MeshNode node(int node) {
+        return nodes[node];
+    }
+
+    int degree(int node) {
+        return links.get(node).size();
+    }
+
+    long now() {
+        return now;
+    }
+
+    Random random() {
+        return random;
+    }
+
+    void schedule(long atMicros, Runnable task) {
+        events.add(new Event(Math.max(atMicros, now), order++, task));
+    }
+
+    /** Brings every link up, then has each node advert its table on a randomly phased interval. */
+    void startRouting(long intervalMicros, long maxRouteAgeMillis) {
+        for (int i = 0; i < nodes.length; i++) {
+            for (String link : links.get(i)) {
+                nodes[i].linkUp(link, now / 1000);
+            }
+            final MeshNode node = nodes[i];
+            scheduleRepeating(now + (long) (random.nextDouble() * intervalMicros), intervalMicros,
+                    () -> node.advertRound(now / 1000, maxRouteAgeMillis));
+        }
+    }
+
+    /** Originates a packet at a node; returns how many links took it. */
+    int send(int from, int flags, int ttl, long messageId, int destination, byte[] payload) {
+        byte[] packet = MeshPacket.create(flags, ttl, messageId, nodeId(from), destination, payload);
+        return nodes[from].send(packet, now / 1000);
+    }
+
+    void runUntil(long micros) {
+        while (!events.isEmpty() && events.peek().time <= micros) {
+            Event event = events.poll();
+            now = event.time;
+            event.task.run();
+        }
+        now = Math.max(now, micros);
+    }
+
+    /** Hop counts from a node by breadth-first search; -1 where unreachable. */
+    int[] hopsFrom(int from) {
+        int[] hops = new int[nodes.length];
+        Arrays.fill(hops, -1);
+        hops[from] = 0;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(from);
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (String link : links.get(node)) {
+                int next = indexOf.get(link);
+                if (hops[next] < 0) {
+                    hops[next] = hops[node] + 1;
+                    queue.add(next);
+                }
+            }
+        }
+        return hops;
+    }
+
+    long fragmentsSent() {
+        return fragmentsSent;
+    }
+
+    long fragmentsLost() {
+        return fragmentsLost;
+    }
+
+    long refused() {
+        return refused;
+    }
+
+    /** Reassembled packets handed to a node's relay logic. */
+    long packetsHandled() {
+        return packetsHandled;
+    }
+
+    private void scheduleRepeating(long at, long intervalMicros, Runnable task) {
+        schedule(at, () -> {
+            task.run();
+            scheduleRepeating(at + intervalMicros, intervalMicros, task);
+        });
+    }
+
+    // Fragments a packet onto a link's next connection events, as GattWriteQueue would.
+    private boolean transmit(int from, String link, byte[] packet) {
+        int to = indexOf.get(link);
+        String key = addresses[from] + '>' + link;
+        long start = Math.max(now, busyUntil.getOrDefault(key, 0L));
+        if (start - now > config.maxBacklogMicros) {
+            refused++;
+            return false;
+        }
+        int count = PacketFragmenter.fragmentCount(packet.length, config.mtu);
+        int messageId = fragmentIds[from]++ & 0xffff;
+        String sender = addresses[from];
+        for (int i = 0; i < count; i++) {
+            start += config.connectionIntervalMicros;
+            fragmentsSent++;
+            if (random.nextDouble() < config.loss) {
+                fragmentsLost++;
+                continue;
+            }
+            byte[] fragment = PacketFragmenter.fragment(packet, PacketFragmenter.KIND_MESH, messageId, i, config.mtu);
+            long arrival = start + config.minDelayMicros + (long) (random.nextDouble() * config.jitterMicros);
+            schedule(arrival, () -> receive(to, sender, fragment));
+        }
+        busyUntil.put(key, start);
+        return true;
+    }
+
+    private void receive(int node, String link, byte[] fragment) {
+        long nowMillis = now / 1000;
+        byte[] packet = reassemblers[node].accept(link, fragment, nowMillis);
+        if (packet == null) {
+            return;
+        }
+        packetsHandled++;
+        int decision = nodes[node].receive(link, packet, nowMillis);
+        if (decision != MeshRelay.MALFORMED && (decision & MeshRelay.DELIVER) != 0) {
+            listener.onDeliver(node, packet, now);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.securecomm;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * End-to-end runs of the native mesh code over {@link LoopbackMesh}: 200
+ * nodes, each with its own relay, routing table and reassembler. Routing
+ * converges over four advert rounds. Then random pairs exchange encrypted
+ * 120-byte chat messages, and a few broadcasts are flooded, at several
+ * fragment loss rates. Latency is virtual time from send until the
+ * destination has decrypted the payload. Fallbacks are unicast hops that
+ * found no route and flooded instead. Packets/s is reassembled packets
+ * through the relay path per wall-clock second, simulator included.
+ */
+public final class MeshSimulationBenchmark {
+
+    private static final long SECOND = 1_000_000;
+    private static final long ADVERT_INTERVAL = 30 * SECOND;
+    private static final long ROUTE_MAX_AGE_MILLIS = 95_000;
+    private static final int MESSAGES = 2_000;
+    private static final int BROADCASTS = 20;
+    private static final int TTL = 16;
+    private static final int PAYLOAD_BYTES = 120;
+
+    public static void main(String[] args) throws Exception {
+        byte[] rawKey = new byte[32];
+        new SecureRandom().nextBytes(rawKey);
+        SecretKeySpec key = new SecretKeySpec(rawKey, "AES");
+
+        System.out.printf("%-6s %8s %9s %8s %8s %8s %7s %9s %11s %9s %12s%n", "loss", "degree", "routes",
+                "sent", "deliv", "p50 ms", "p99 ms", "hops+", "flood reach", "fallbacks", "packets/s");
+        for (double loss : new double[] {0, 0.01, 0.05}) {
+            run(key, loss);
+        }
+
+        // A single relay hop with routing in place, no simulator around it.
+        MeshTransport sink = new MeshTransport() {
+            private final Iterable<String> links = Arrays.asList("a", "b", "c", "d");
+
+            @Override
+            public Iterable<String> links() {
+                return links;
+            }
+
+            @Override
+            public boolean send(String link, byte[] packet, int trafficClass) {
+                return true;
+            }
+        };
+        MeshNode node = new MeshNode(7, new SeenMessageSet(SeenMessageSet.DEFAULT_BUCKETS,
+                SeenMessageSet.DEFAULT_BUCKET_MILLIS, SeenMessageSet.DEFAULT_BUCKET_CAPACITY), 64, sink);
+        byte[] packet = MeshPacket.create(0, TTL, 0, 3, MeshPacket.BROADCAST, new byte[PAYLOAD_BYTES]);
+        long[] next = {0};
+        Bench.run("MeshNode.receive: new broadcast, flood 3", 1_000_000, () -> {
+            long id = next[0]++;
+            packet[4] = (byte) (id >>> 24);
+            packet[5] = (byte) (id >>> 16);
+            packet[6] = (byte) (id >>> 8);
+            packet[7] = (byte) id;
+            return node.receive("a", packet, id / 1000);
+        });
+    }
+
+    private static void run(SecretKeySpec key, double loss) throws Exception {
+        LoopbackMesh.Config config = new LoopbackMesh.Config();
+        config.loss = loss;
+        Map<Long, Long> sentAt = new HashMap<>();
+        Map<Long, Integer> floodReach = new HashMap<>();
+        Map<Long, Integer> floodFrom = new HashMap<>();
+        LatencyHistogram latency = new LatencyHistogram();
+        long[] extraHops = {0};
+        int[] failures = {0};
+        int[][] shortest = new int[config.nodes][];
+        LoopbackMesh mesh = new LoopbackMesh(config, (node, packet, nowMicros) -> {
+            long messageId = MeshPacket.messageId(packet);
+            if (MeshPacket.destination(packet) == MeshPacket.BROADCAST) {
+                floodReach.merge(messageId, 1, Integer::sum);
+                return;
+            }
+            Long start = sentAt.remove(messageId);
+            if (start == null) {
+                return;
+            }
+            try {
+                byte[] payload = MeshPacket.payload(packet);
+                CryptoFrameCodec.decrypt(key, payload, 0, payload.length);
+            } catch (Exception e) {
+                failures[0]++;
+                return;
+            }
+            latency.record((nowMicros - start) * 1000);
+            int source = MeshPacket.source(packet) - 1;
+            extraHops[0] += MeshPacket.hops(packet) + 1 - shortest[source][node];
+        });
+        Random random = mesh.random();
+        long links = 0;
+        for (int i = 0; i < mesh.size(); i++) {
+            shortest[i] = mesh.hopsFrom(i);
+            links += mesh.degree(i);
+        }
+
+        long wallStart = System.nanoTime();
+        mesh.startRouting(ADVERT_INTERVAL, ROUTE_MAX_AGE_MILLIS);
+        mesh.runUntil(4 * ADVERT_INTERVAL);
+        long reachablePairs = 0;
+        long routedPairs = 0;
+        for (int i = 0; i < mesh.size(); i++) {
+            for (int j = 0; j < mesh.size(); j++) {
+                if (i != j && shortest[i][j] > 0) {
+                    reachablePairs++;
+                    if (mesh.node(i).nextHopLink(LoopbackMesh.nodeId(j)) != null) {
+                        routedPairs++;
+                    }
+                }
+            }
+        }
+
+        long at = mesh.now();
+        int sent = 0;
+        for (int m = 0; m < MESSAGES; m++) {
+            at += (long) (-Math.log(1 - random.nextDouble()) * SECOND / 20);
+            int from = random.nextInt(mesh.size());
+            int to = random.nextInt(mesh.size());
+            if (from == to || shortest[from][to] < 0) {
+                continue;
+            }
+            sent++;
+            long messageId = random.nextLong();
+            byte[] payload = CryptoFrameCodec.encrypt(key, new byte[PAYLOAD_BYTES]);
+            mesh.schedule(at, () -> {
+                sentAt.put(messageId, mesh.now());
+                mesh.send(from, MeshPacket.withTrafficClass(0, OutboundScheduler.CHAT), TTL, messageId,
+                        LoopbackMesh.nodeId(to), payload);
+            });
+            if (m % (MESSAGES / BROADCASTS) == 0) {
+                long floodId = random.nextLong();
+                floodReach.put(floodId, 0);
+                floodFrom.put(floodId, from);
+                mesh.schedule(at, () -> mesh.send(from, MeshPacket.withTrafficClass(0, OutboundScheduler.CHAT),
+                        TTL, floodId, MeshPacket.BROADCAST, payload));
+            }
+        }
+        mesh.runUntil(at + 30 * SECOND);
+        double wallSeconds = (System.nanoTime() - wallStart) / 1e9;
+
+        double reach = 0;
+        for (Map.Entry<Long, Integer> flood : floodReach.entrySet()) {
+            int reachable = 0;
+            for (int hops : shortest[floodFrom.get(flood.getKey())]) {
+                reachable += hops > 0 ? 1 : 0;
+            }
+            reach += (double) flood.getValue() / Math.max(1, reachable);
+        }
+        reach /= floodReach.size();
+        long unicast = 0;
+        long fallbacks = 0;
+        for (int i = 0; i < mesh.size(); i++) {
+            unicast += mesh.node(i).unicastForwards();
+            fallbacks += mesh.node(i).floodFallbacks();
+        }
+        long delivered = latency.count();
+        System.out.printf("%-6s %8.1f %8.1f%% %8d %7.1f%% %8.1f %7.1f %9.2f %10.1f%% %8.1f%% %12.0f%n",
+                String.format("%.0f%%", loss * 100), (double) links / mesh.size(),
+                100.0 * routedPairs / reachablePairs, sent, 100.0 * delivered / sent,
+                latency.percentileMillis(0.5), latency.percentileMillis(0.99),
+                delivered == 0 ? 0 : (double) extraHops[0] / delivered, 100 * reach,
+                100.0 * fallbacks / Math.max(1, unicast + fallbacks), mesh.packetsHandled() / wallSeconds);
+        if (failures[0] > 0) {
+            System.out.printf("  %d payloads failed authentication%n", failures[0]);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.securecomm;
+
+/**
+ * Per-call cost of the shared metrics on the hot paths, enabled and disabled:
+ * a counter bump, a byte count and a timed operation. The metrics are
+ * recorded from four threads at once too, like GATT callbacks, crypto
+ * workers and the audio threads.
+ */
+public final class MetricsBenchmark {
+
+    private static final int ITERATIONS = 5_000_000;
+
+    public static void main(String[] args) throws Exception {
+        NativeMetrics metrics = new NativeMetrics();
+        for (boolean enabled : new boolean[] {false, true}) {
+            metrics.setEnabled(enabled);
+            String state = enabled ? "enabled" : "disabled";
+            System.out.println("== metrics " + state + " ==");
+            Bench.run("increment", ITERATIONS, () -> {
+                metrics.increment(NativeMetrics.BLE_FRAGMENTS_RECEIVED);
+                return null;
+            });
+            Bench.run("add bytes", ITERATIONS, () -> {
+                metrics.add(NativeMetrics.BLE_BYTES_RECEIVED, 182);
+                return null;
+            });
+            Bench.run("startTimer + stopTimer", ITERATIONS, () -> {
+                long start = metrics.startTimer();
+                metrics.stopTimer(NativeMetrics.CRYPTO_ENCRYPT, NativeMetrics.CRYPTO_ENCRYPT_OPS, start);
+                return null;
+            });
+        }
+
+        Thread[] threads = new Thread[4];
+        long start = System.nanoTime();
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < ITERATIONS / 4; i++) {
+                    metrics.increment(NativeMetrics.BLE_FRAGMENTS_SENT);
+                    metrics.record(NativeMetrics.BLE_WRITE_RTT, 30_000_000 + i % 1_000_000);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        System.out.printf("4 threads, increment + record: %.1f ns per pair%n",
+                (System.nanoTime() - start) / (double) ITERATIONS);
+        System.out.println(metrics.dump());
+    }
+}
@@ -0,0 +1,144 @@
+package com.securecomm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Drives a GattWriteQueue over a simulated saturated link: one acknowledged
+ * 185-byte-MTU write per 7.5 ms connection event. Offered load is a voice
+ * stream, chat bursts and a bulk transfer that keeps its queue full, plus an
+ * emergency alert every ~1.5 s. Compares the old single FIFO (everything sent
+ * as one class) with the class scheduler. Latency is measured from enqueue
+ * until the write carrying a message's last fragment completes. Lost counts
+ * refused and evicted messages; refused bulk is just backpressure and is not
+ * counted. It first checks that writes at the 517-byte MTU stay within ATT's
+ * 512-byte attribute limit and reassemble intact.
+ */
+public final class OutboundSchedulerBenchmark {
+
+    private static final int MTU = 185;
+    private static final double TICK_MILLIS = 7.5;
+    private static final int TICKS = 40_000;
+
+    private static final int[] SIZES = {200, 600, 132, 300, 512};
+
+    private static long tick;
+
+    public static void main(String[] args) throws Exception {
+        verifyFragmentation();
+        System.out.printf("== %d connection events (%.0f s) of saturated %d-byte-MTU link ==%n",
+                TICKS, TICKS * TICK_MILLIS / 1000, MTU);
+        System.out.printf("%-10s %-10s %8s %8s %10s %10s %10s%n", "scheduler", "class", "sent", "lost",
+                "p50 ms", "p99 ms", "max ms");
+        run("fifo", true);
+        run("classes", false);
+
+        OutboundScheduler<Object> scheduler = new OutboundScheduler<>(new OutboundScheduler.Stats());
+        Object item = new Object();
+        int[] next = {0};
+        Bench.run("offer + poll (mixed classes)", 2_000_000, () -> {
+            int trafficClass = next[0]++ % OutboundScheduler.CLASS_COUNT;
+            scheduler.offer(trafficClass, item, SIZES[trafficClass], 0);
+            return scheduler.poll(0);
+        });
+    }
+
+    private static void run(String name, boolean fifo) {
+        tick = 0;
+        LatencyHistogram[] delivery = new LatencyHistogram[OutboundScheduler.CLASS_COUNT];
+        long[] dropped = new long[OutboundScheduler.CLASS_COUNT];
+        for (int c = 0; c < delivery.length; c++) {
+            delivery[c] = new LatencyHistogram();
+        }
+        GattWriteQueue queue = new GattWriteQueue((fragment, withResponse) -> true, new OutboundScheduler.Stats());
+        queue.setMtu(MTU);
+        Random random = new Random(5);
+        double voiceDue = 0;
+        long nextChat = 0;
+        long nextControl = 0;
+        long nextEmergency = 200;
+
+        for (tick = 0; tick < TICKS; tick++) {
+            double now = tick * TICK_MILLIS;
+            if (now >= voiceDue) {
+                offer(queue, OutboundScheduler.VOICE, fifo, delivery, dropped);
+                voiceDue += VoiceCodec.FRAME_MILLIS;
+            }
+            if (tick >= nextChat) {
+                for (int i = random.nextInt(3); i >= 0; i--) {
+                    offer(queue, OutboundScheduler.CHAT, fifo, delivery, dropped);
+                }
+                nextChat = tick + 13 + random.nextInt(40);
+            }
+            if (tick >= nextControl) {
+                offer(queue, OutboundScheduler.CONTROL, fifo, delivery, dropped);
+                nextControl = tick + 4_000;
+            }
+            if (tick >= nextEmergency) {
+                offer(queue, OutboundScheduler.EMERGENCY, fifo, delivery, dropped);
+                nextEmergency = tick + 100 + random.nextInt(200);
+            }
+            while (offer(queue, OutboundScheduler.BULK, fifo, delivery, dropped)) {
+                // Bulk tops its queue up every event, so the link never idles.
+            }
+            // One acknowledged write per connection event.
+            queue.onWriteComplete(true);
+        }
+        for (int c = 0; c < OutboundScheduler.CLASS_COUNT; c++) {
+            LatencyHistogram h = delivery[c];
+            System.out.printf("%-10s %-10s %8d %8d %10.1f %10.1f %10.1f%n", name, OutboundScheduler.CLASS_NAMES[c],
+                    h.count(), dropped[c], h.percentileMillis(0.5), h.percentileMillis(0.99), h.maxMillis());
+        }
+    }
+
+    // At the largest MTU Android negotiates, no write may exceed the 512-byte ATT attribute limit.
+    private static void verifyFragmentation() {
+        PacketReassembler reassembler = new PacketReassembler(PacketReassembler.DEFAULT_TIMEOUT_MILLIS,
+                PacketReassembler.DEFAULT_MAX_PARTIALS);
+        List<byte[]> received = new ArrayList<>();
+        GattWriteQueue[] queue = new GattWriteQueue[1];
+        queue[0] = new GattWriteQueue((fragment, withResponse) -> {
+            if (fragment.length > PacketFragmenter.MAX_ATTRIBUTE_BYTES) {
+                throw new AssertionError(fragment.length + "-byte write at MTU " + PacketFragmenter.REQUESTED_MTU);
+            }
+            byte[] message = reassembler.accept("peer", fragment, 0);
+            if (message != null) {
+                received.add(message);
+            }
+            queue[0].onWriteComplete(true);
+            return true;
+        }, new OutboundScheduler.Stats());
+        queue[0].setMtu(PacketFragmenter.REQUESTED_MTU);
+        Random random = new Random(7);
+        int perFragment = PacketFragmenter.maxFragmentPayload(PacketFragmenter.REQUESTED_MTU);
+        int[] sizes = {1, perFragment, perFragment + 1, 4 * perFragment + 17};
+        for (int size : sizes) {
+            byte[] payload = new byte[size];
+            random.nextBytes(payload);
+            queue[0].enqueue(payload, OutboundScheduler.CHAT, (success, error) -> { });
+            if (received.isEmpty() || !Arrays.equals(payload, received.remove(0))) {
+                throw new AssertionError("round trip mismatch at " + size + " bytes");
+            }
+        }
+    }
+
+    // The completion fires when the last fragment's write completes and records the delivery latency.
+    private static boolean offer(GattWriteQueue queue, int trafficClass, boolean fifo,
+                                 LatencyHistogram[] delivery, long[] dropped) {
+        byte[] payload = new byte[SIZES[trafficClass]];
+        final long enqueued = tick;
+        boolean accepted = queue.enqueue(payload, fifo ? OutboundScheduler.CHAT : trafficClass, (success, error) -> {
+            if (success) {
+                delivery[trafficClass].record((long) ((tick - enqueued + 1) * TICK_MILLIS * 1_000_000));
+            } else {
+                dropped[trafficClass]++;
+            }
+        });
+        if (!accepted && trafficClass != OutboundScheduler.BULK) {
+            dropped[trafficClass]++;
+        }
+        return accepted;
+    }
+}
@@ -0,0 +1,68 @@
+package com.securecomm;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Measures the outbox in a temporary directory: append, lease and acknowledge
+ * throughput for 200-byte frames spread over eight peers, then the time to
+ * reopen a full outbox. Reopening scans record headers and indexes offsets;
+ * payloads stay in the mapped segments until they are leased.
+ */
+public final class OutboxBenchmark {
+
+    private static final int PEERS = 8;
+    private static final int FRAME_BYTES = 200;
+
+    public static void main(String[] args) throws Exception {
+        File dir = java.nio.file.Files.createTempDirectory("outbox-bench").toFile();
+        try {
+            byte[] frame = new byte[FRAME_BYTES];
+            String[] peers = new String[PEERS];
+            for (int i = 0; i < PEERS; i++) {
+                peers[i] = String.format("AA:BB:CC:DD:EE:%02X", i);
+            }
+            MessageOutbox outbox = new MessageOutbox(dir, MessageOutbox.DEFAULT_SEGMENT_BYTES,
+                    MessageOutbox.DEFAULT_MAX_SEGMENTS);
+            int[] next = {0};
+            Bench.run("append + lease + acknowledge", 200_000, () -> {
+                String peer = peers[next[0]++ % PEERS];
+                long id = outbox.append(peer, OutboundScheduler.CHAT, frame, 0);
+                List<MessageOutbox.Entry> batch = outbox.lease(peer, 1);
+                outbox.acknowledge(batch.get(0).id);
+                return id;
+            });
+            System.out.printf("live segments after %d appends: %d%n", outbox.appended(), outbox.segments());
+
+            int stored = 0;
+            while (outbox.append(peers[stored % PEERS], OutboundScheduler.CHAT, frame, 0) >= 0) {
+                stored++;
+            }
+            outbox.close();
+            System.out.printf("== %d frames (%d MiB) left pending across %d segments ==%n", stored,
+                    (long) stored * FRAME_BYTES >> 20, MessageOutbox.DEFAULT_MAX_SEGMENTS);
+
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+            long start = System.nanoTime();
+            MessageOutbox reopened = new MessageOutbox(dir, MessageOutbox.DEFAULT_SEGMENT_BYTES,
+                    MessageOutbox.DEFAULT_MAX_SEGMENTS);
+            double millis = (System.nanoTime() - start) / 1e6;
+            System.gc();
+            long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+            System.out.printf("reopen: %.1f ms, %d pending, index heap %.1f MiB (%d B/record) for %.1f MiB on disk%n",
+                    millis, reopened.pending(), (heapAfter - heapBefore) / 1048576.0,
+                    (heapAfter - heapBefore) / Math.max(1, reopened.pending()), reopened.pendingBytes() / 1048576.0);
+            reopened.close();
+        } finally {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            dir.delete();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.securecomm;
+
+import java.util.Random;
+
+public final class RelayBenchmark {
+
+    private static final int ITERATIONS = 2_000_000;
+
+    public static void main(String[] args) throws Exception {
+        MeshRelay relay = new MeshRelay(7, new SeenMessageSet(SeenMessageSet.DEFAULT_BUCKETS,
+                SeenMessageSet.DEFAULT_BUCKET_MILLIS, SeenMessageSet.DEFAULT_BUCKET_CAPACITY));
+        Random random = new Random(1);
+        byte[] payload = new byte[120];
+        byte[][] packets = new byte[1024][];
+        for (int i = 0; i < packets.length; i++) {
+            packets[i] = MeshPacket.create(0, MeshPacket.DEFAULT_TTL, random.nextLong(), 3, MeshPacket.BROADCAST, payload);
+        }
+        long[] clock = {0};
+
+        System.out.println("== native relay decision (120-byte payload) ==");
+        Bench.run("duplicate packet", ITERATIONS, () -> relay.onPacket(packets[(int) (clock[0]++ & 1023)], 0));
+        Bench.run("new packet + forward copy", ITERATIONS, () -> {
+            byte[] packet = packets[(int) (clock[0] & 1023)].clone();
+            packet[4] ^= (byte) clock[0];
+            packet[11] = (byte) (clock[0] >>> 8);
+            clock[0]++;
+            int decision = relay.onPacket(packet, clock[0] / 100);
+            return (decision & MeshRelay.FORWARD) != 0 ? MeshPacket.forwardCopy(packet) : null;
+        });
+        System.out.printf("relay counters: %d received, %d duplicates, %d forwarded%n",
+                relay.received(), relay.duplicates(), relay.forwarded());
+    }
+}
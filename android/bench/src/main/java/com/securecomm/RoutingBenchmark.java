@@ -0,0 +1,239 @@
+package com.securecomm;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Simulates a 500-node mesh on a random geometric graph. Every node runs its
+ * own RoutingTable and exchanges adverts with its radio neighbours in
+ * synchronous rounds; tables are checked against breadth-first hop counts.
+ */
+public final class RoutingBenchmark {
+
+    private static final int NODES = 500;
+    private static final double AVERAGE_DEGREE = 6;
+    private static final int MAX_ROUNDS = 64;
+
+    private static int[] ids;
+    private static List<List<Integer>> links;
+    private static RoutingTable[] tables;
+    private static boolean[] down;
+    private static long advertBytes;
+    private static long clock;
+    private static long exchangeNanos;
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(42);
+        buildTopology(random);
+
+        System.out.println("== distance-vector convergence, " + NODES + " nodes ==");
+        int edges = 0;
+        for (List<Integer> neighbors : links) {
+            edges += neighbors.size();
+        }
+        System.out.printf("topology: %d links, average degree %.1f%n", edges / 2, (double) edges / NODES);
+
+        int rounds = converge();
+        System.out.printf("cold start: converged in %d rounds, %.1f ms of advert work, %.1f KiB sent per node per round%n",
+                rounds, exchangeNanos / 1e6, advertBytes / 1024.0 / NODES / Math.max(1, rounds));
+        System.out.printf("forwarding walk over every pair: %s%n", verifyWalks() ? "shortest paths, no loops" : "MISMATCH");
+
+        int failed = busiestNode();
+        down[failed] = true;
+        for (int neighbor : links.get(failed)) {
+            tables[neighbor].linkDown(ids[failed], clock);
+        }
+        rounds = converge();
+        System.out.printf("node with %d links fails: reconverged in %d rounds, %s%n",
+                links.get(failed).size(), rounds, verifyWalks() ? "shortest paths, no loops" : "MISMATCH");
+
+        System.out.println("== per-operation cost ==");
+        int[] destinations = new int[1024];
+        for (int i = 0; i < destinations.length; i++) {
+            destinations[i] = ids[random.nextInt(NODES)];
+        }
+        RoutingTable table = tables[0];
+        int[] cursor = {0};
+        Bench.run("nextHop lookup", 5_000_000, () -> table.nextHop(destinations[cursor[0]++ & 1023]));
+        int neighbor = links.get(0).get(0);
+        byte[] advert = tables[neighbor].encodeAdvert(ids[0]);
+        Bench.run("encodeAdvert (" + tables[neighbor].size() + " routes)", 20_000,
+                () -> tables[neighbor].encodeAdvert(ids[0]));
+        Bench.run("applyAdvert (" + advert.length + " bytes)", 20_000,
+                () -> table.applyAdvert(ids[neighbor], 1, advert, 0, clock++));
+    }
+
+    private static void buildTopology(Random random) {
+        double[] x = new double[NODES];
+        double[] y = new double[NODES];
+        ids = new int[NODES];
+        tables = new RoutingTable[NODES];
+        down = new boolean[NODES];
+        links = new ArrayList<>();
+        Set<Integer> used = new HashSet<>();
+        for (int i = 0; i < NODES; i++) {
+            x[i] = random.nextDouble();
+            y[i] = random.nextDouble();
+            int id;
+            do {
+                id = random.nextInt();
+            } while (id == RoutingTable.NO_ROUTE || id == MeshPacket.BROADCAST || !used.add(id));
+            ids[i] = id;
+            tables[i] = new RoutingTable(id, NODES);
+            links.add(new ArrayList<>());
+        }
+        double radius = Math.sqrt(AVERAGE_DEGREE / (Math.PI * NODES));
+        for (int i = 0; i < NODES; i++) {
+            int nearest = -1;
+            double nearestDistance = Double.MAX_VALUE;
+            for (int j = 0; j < i; j++) {
+                double distance = Math.hypot(x[i] - x[j], y[i] - y[j]);
+                if (distance < radius) {
+                    link(i, j);
+                }
+                if (distance < nearestDistance) {
+                    nearestDistance = distance;
+                    nearest = j;
+                }
+            }
+            // Guarantees one connected mesh even where the random placement leaves islands.
+            if (nearest >= 0 && !links.get(i).contains(nearest)) {
+                link(i, nearest);
+            }
+        }
+        for (int i = 0; i < NODES; i++) {
+            for (int j : links.get(i)) {
+                tables[i].linkUp(ids[j], 1, 0);
+            }
+        }
+    }
+
+    private static void link(int a, int b) {
+        links.get(a).add(b);
+        links.get(b).add(a);
+    }
+
+    private static int converge() {
+        for (int round = 1; round <= MAX_ROUNDS; round++) {
+            long now = ++clock;
+            long start = System.nanoTime();
+            byte[][][] outbox = new byte[NODES][][];
+            for (int i = 0; i < NODES; i++) {
+                if (down[i]) {
+                    continue;
+                }
+                tables[i].nextRound();
+                List<Integer> neighbors = links.get(i);
+                outbox[i] = new byte[neighbors.size()][];
+                for (int k = 0; k < neighbors.size(); k++) {
+                    outbox[i][k] = tables[i].encodeAdvert(ids[neighbors.get(k)]);
+                    advertBytes += outbox[i][k].length;
+                }
+            }
+            for (int i = 0; i < NODES; i++) {
+                if (down[i]) {
+                    continue;
+                }
+                List<Integer> neighbors = links.get(i);
+                for (int k = 0; k < neighbors.size(); k++) {
+                    int neighbor = neighbors.get(k);
+                    if (!down[neighbor]) {
+                        tables[neighbor].applyAdvert(ids[i], 1, outbox[i][k], 0, now);
+                    }
+                }
+            }
+            exchangeNanos += System.nanoTime() - start;
+            if (matchesShortestPaths()) {
+                return round;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matchesShortestPaths() {
+        for (int source = 0; source < NODES; source++) {
+            if (down[source]) {
+                continue;
+            }
+            int[] hops = bfs(source);
+            for (int target = 0; target < NODES; target++) {
+                if (target == source) {
+                    continue;
+                }
+                int expected = hops[target] < 0 ? RoutingTable.INFINITY : hops[target];
+                int actual = tables[source].cost(ids[target]);
+                if (expected != actual) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean verifyWalks() {
+        Map<Integer, Integer> byId = new HashMap<>();
+        for (int i = 0; i < NODES; i++) {
+            byId.put(ids[i], i);
+        }
+        for (int source = 0; source < NODES; source++) {
+            if (down[source]) {
+                continue;
+            }
+            int[] hops = bfs(source);
+            for (int target = 0; target < NODES; target++) {
+                if (target == source || hops[target] < 0) {
+                    continue;
+                }
+                int at = source;
+                int walked = 0;
+                while (at != target && walked <= NODES) {
+                    int next = tables[at].nextHop(ids[target]);
+                    if (next == RoutingTable.NO_ROUTE) {
+                        return false;
+                    }
+                    at = byId.get(next);
+                    walked++;
+                }
+                if (walked != hops[target]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int[] bfs(int source) {
+        int[] hops = new int[NODES];
+        Arrays.fill(hops, -1);
+        hops[source] = 0;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(source);
+        while (!queue.isEmpty()) {
+            int at = queue.poll();
+            for (int next : links.get(at)) {
+                if (!down[next] && hops[next] < 0) {
+                    hops[next] = hops[at] + 1;
+                    queue.add(next);
+                }
+            }
+        }
+        return hops;
+    }
+
+    private static int busiestNode() {
+        int busiest = 0;
+        for (int i = 1; i < NODES; i++) {
+            if (links.get(i).size() > links.get(busiest).size()) {
+                busiest = i;
+            }
+        }
+        return busiest;
+    }
+}
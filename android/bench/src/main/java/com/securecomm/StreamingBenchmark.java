@@ -0,0 +1,119 @@
+package com.securecomm;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.spec.SecretKeySpec;
+
+public final class StreamingBenchmark {
+
+    /** Produces {@code length} pseudo-random bytes without holding them in memory. */
+    private static final class SyntheticChannel implements ReadableByteChannel {
+        private long remaining;
+        private byte next = 17;
+
+        SyntheticChannel(long length) {
+            this.remaining = length;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (remaining == 0) {
+                return -1;
+            }
+            int count = (int) Math.min(dst.remaining(), remaining);
+            for (int i = 0; i < count; i++) {
+                next = (byte) (next * 31 + 7);
+                dst.put(next);
+            }
+            remaining -= count;
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class NullChannel implements WritableByteChannel {
+        long bytes;
+
+        @Override
+        public int write(ByteBuffer src) {
+            int count = src.remaining();
+            src.position(src.limit());
+            bytes += count;
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        byte[] rawKey = new byte[32];
+        new SecureRandom().nextBytes(rawKey);
+        SecretKeySpec key = new SecretKeySpec(rawKey, "AES");
+
+        verifyRoundTrip(key);
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        System.out.println("== chunked encrypt, " + ChunkedAead.DEFAULT_CHUNK_BYTES + " byte chunks ==");
+        for (long size : new long[] {1L << 20, 16L << 20, 64L << 20}) {
+            NullChannel sink = new NullChannel();
+            long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            ChunkedAead.encrypt(key, ChunkedAead.DEFAULT_CHUNK_BYTES, new SyntheticChannel(size), sink);
+            long elapsed = System.nanoTime() - start;
+            long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            long chunks = size / ChunkedAead.DEFAULT_CHUNK_BYTES + 1;
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            System.out.printf("%4d MiB: %7.1f MiB/s, %6.0f bytes allocated per chunk, %5.1f MiB live heap after%n",
+                    size >> 20, size / (elapsed / 1e9) / (1 << 20), (double) allocated / chunks,
+                    (runtime.totalMemory() - runtime.freeMemory()) / (double) (1 << 20));
+        }
+    }
+
+    private static void verifyRoundTrip(SecretKeySpec key) throws Exception {
+        for (int size : new int[] {0, 1, ChunkedAead.DEFAULT_CHUNK_BYTES, ChunkedAead.DEFAULT_CHUNK_BYTES * 3 + 5}) {
+            byte[] plaintext = new byte[size];
+            new SecureRandom().nextBytes(plaintext);
+            java.io.ByteArrayOutputStream sealed = new java.io.ByteArrayOutputStream();
+            ChunkedAead.encrypt(key, ChunkedAead.DEFAULT_CHUNK_BYTES,
+                    Channels.newChannel(new java.io.ByteArrayInputStream(plaintext)), Channels.newChannel(sealed));
+            java.io.ByteArrayOutputStream opened = new java.io.ByteArrayOutputStream();
+            ChunkedAead.decrypt(key, Channels.newChannel(new java.io.ByteArrayInputStream(sealed.toByteArray())),
+                    Channels.newChannel(opened));
+            if (!Arrays.equals(plaintext, opened.toByteArray())) {
+                throw new AssertionError("round trip mismatch at " + size + " bytes");
+            }
+            byte[] truncated = Arrays.copyOf(sealed.toByteArray(), sealed.size() - ChunkedAead.recordLength(0));
+            try {
+                ChunkedAead.decrypt(key, Channels.newChannel(new java.io.ByteArrayInputStream(truncated)),
+                        Channels.newChannel(new java.io.ByteArrayOutputStream()));
+                throw new AssertionError("truncation not detected at " + size + " bytes");
+            } catch (java.security.GeneralSecurityException expected) {
+                // Either a short record or the missing final chunk.
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.securecomm;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+/**
+ * Offline encode/decode throughput for the voice codec modes on ten seconds of
+ * synthetic voiced audio at the capture rate, fed in capture-sized buffers.
+ * Also reports the wire bitrate and the codec's SNR against the resampled
+ * input it was given.
+ */
+public final class VoiceCodecBenchmark {
+
+    private static final int CAPTURE_RATE = 44_100;
+    private static final int CAPTURE_BUFFER_BYTES = 3_528;
+    private static final int SECONDS = 10;
+    private static final int RUNS = 20;
+
+    public static void main(String[] args) {
+        short[] speech = synthesize(CAPTURE_RATE * SECONDS, new Random(3));
+        ByteBuffer capture = ByteBuffer.allocateDirect(speech.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        capture.asShortBuffer().put(speech);
+
+        System.out.printf("== voice codecs, %d s of %d Hz input, %d-byte capture buffers ==%n",
+                SECONDS, CAPTURE_RATE, CAPTURE_BUFFER_BYTES);
+        System.out.printf("raw PCM: %.0f kbit/s%n", CAPTURE_RATE * 16 / 1000.0);
+        for (String mode : new String[] {VoiceCodec.MODE_ADPCM_8K, VoiceCodec.MODE_ADPCM_16K}) {
+            run(mode, capture);
+        }
+    }
+
+    private static void run(String mode, ByteBuffer capture) {
+        VoiceCodec probe = VoiceCodec.forMode(mode);
+        int frames = SECONDS * 1000 / VoiceCodec.FRAME_MILLIS;
+        byte[] wire = new byte[(frames + 2) * probe.encodedFrameBytes()];
+        int[] written = new int[1];
+
+        long encodeNanos = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            VoiceEncoder encoder = new VoiceEncoder(VoiceCodec.forMode(mode), CAPTURE_RATE, CAPTURE_BUFFER_BYTES);
+            written[0] = 0;
+            VoiceEncoder.Output output = encoded -> {
+                int length = encoded.remaining();
+                encoded.get(wire, written[0], length);
+                written[0] += length;
+            };
+            long start = System.nanoTime();
+            for (int offset = 0; offset < capture.capacity(); offset += CAPTURE_BUFFER_BYTES) {
+                capture.limit(Math.min(capture.capacity(), offset + CAPTURE_BUFFER_BYTES)).position(offset);
+                encoder.encode(capture, output);
+            }
+            encodeNanos = Math.min(encodeNanos, System.nanoTime() - start);
+            capture.clear();
+        }
+        int wireBytes = written[0];
+
+        long decodeNanos = Long.MAX_VALUE;
+        int frameBytes = probe.encodedFrameBytes();
+        int decodedSamples = 0;
+        for (int run = 0; run < RUNS; run++) {
+            VoiceDecoder decoder = new VoiceDecoder(CAPTURE_RATE);
+            decodedSamples = 0;
+            long start = System.nanoTime();
+            // Playback receives a few frames per packet, so decode in small groups.
+            for (int p = 0; p < wireBytes; p += frameBytes * 2) {
+                decodedSamples += decoder.decode(wire, p, Math.min(frameBytes * 2, wireBytes - p));
+            }
+            decodeNanos = Math.min(decodeNanos, System.nanoTime() - start);
+        }
+
+        double seconds = SECONDS;
+        System.out.printf("%-8s %5.1f kbit/s (%4.1fx smaller)  encode %6.1fx real time (%5.2f us/frame)"
+                        + "  decode %6.1fx real time (%5.2f us/frame)  SNR %4.1f dB  %d samples out%n",
+                mode, wireBytes * 8 / seconds / 1000, CAPTURE_RATE * 2 * seconds / wireBytes,
+                seconds * 1e9 / encodeNanos, encodeNanos / 1e3 / (wireBytes / frameBytes),
+                seconds * 1e9 / decodeNanos, decodeNanos / 1e3 / (wireBytes / frameBytes),
+                snr(mode, capture, wire, wireBytes), decodedSamples);
+    }
+
+    // Compares the codec output with the resampled signal it was asked to encode.
+    private static double snr(String mode, ByteBuffer capture, byte[] wire, int wireBytes) {
+        VoiceCodec codec = VoiceCodec.forMode(mode);
+        Resampler resampler = new Resampler(CAPTURE_RATE, codec.sampleRate());
+        short[] reference = new short[resampler.maxOutput(capture.capacity() / 2)];
+        int referenceLength = 0;
+        for (int offset = 0; offset < capture.capacity(); offset += CAPTURE_BUFFER_BYTES) {
+            capture.limit(Math.min(capture.capacity(), offset + CAPTURE_BUFFER_BYTES)).position(offset);
+            referenceLength += resampler.processLittleEndian(capture, reference, referenceLength);
+        }
+        capture.clear();
+        short[] frame = new short[codec.frameSamples()];
+        double signal = 0;
+        double noise = 0;
+        int index = 0;
+        for (int p = 0; p + codec.encodedFrameBytes() <= wireBytes; p += codec.encodedFrameBytes()) {
+            codec.decode(wire, p, frame, 0);
+            for (int i = 0; i < frame.length && index < referenceLength; i++, index++) {
+                double error = frame[i] - reference[index];
+                signal += (double) reference[index] * reference[index];
+                noise += error * error;
+            }
+        }
+        return 10 * Math.log10(signal / Math.max(1, noise));
+    }
+
+    // Harmonic-rich voiced signal with a wandering pitch, syllable-rate envelope and a little noise.
+    private static short[] synthesize(int samples, Random random) {
+        short[] out = new short[samples];
+        double phase = 0;
+        for (int i = 0; i < samples; i++) {
+            double t = (double) i / CAPTURE_RATE;
+            double pitch = 140 + 40 * Math.sin(2 * Math.PI * 0.7 * t);
+            phase += 2 * Math.PI * pitch / CAPTURE_RATE;
+            double value = 0;
+            for (int harmonic = 1; harmonic <= 12; harmonic++) {
+                double formant = Math.exp(-Math.pow((harmonic * pitch - 700) / 600, 2))
+                        + 0.5 * Math.exp(-Math.pow((harmonic * pitch - 1800) / 500, 2));
+                value += formant * Math.sin(harmonic * phase) / harmonic;
+            }
+            double envelope = 0.55 + 0.45 * Math.sin(2 * Math.PI * 4 * t);
+            out[i] = (short) (9000 * envelope * value + 150 * random.nextGaussian());
+        }
+        return out;
+    }
+}
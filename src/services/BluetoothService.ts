@@ -32,8 +32,20 @@ const WebBluetoothMeshModule = {
   ): Promise<void> => {
     console.log("Web: Sending message to device:", deviceId);
   },
+  sendMessageWithPriority: async (
+    deviceId: string,
+    encryptedData: string,
+    priority: string
+  ): Promise<void> => {
+    console.log("Web: Sending", priority, "message to device:", deviceId);
+  },
 };
 
+// Native outbound traffic class for an emergency priority; anything else goes as chat.
+function nativePriority(priority?: string): string | undefined {
+  return priority === "CRITICAL" || priority === "HIGH" ? "emergency" : undefined;
+}
+
 const BluetoothMeshModule =
   Platform.OS === "web"
     ? WebBluetoothMeshModule
@@ -215,10 +227,16 @@ class BluetoothService {
       
       // In a real implementation, this would send to all connected devices
       const connectedDevices = this.getConnectedDevices();
+      const priority = nativePriority(data?.priority);
       for (const device of connectedDevices) {
         if (device.id) {
           const encryptedData = await cryptoService.encrypt(JSON.stringify(data));
-          await BluetoothMeshModule.sendMessage(device.id, encryptedData);
+          if (priority && BluetoothMeshModule.sendMessageWithPriority) {
+            // Emergency traffic skips ahead of voice and chat on every link.
+            await BluetoothMeshModule.sendMessageWithPriority(device.id, encryptedData, priority);
+          } else {
+            await BluetoothMeshModule.sendMessage(device.id, encryptedData);
+          }
         }
       }
     } catch (error) {